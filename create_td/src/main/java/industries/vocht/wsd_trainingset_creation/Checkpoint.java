@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the progress of step 1, saved regularly so that a stopped (crashed) run can continue where it was.
+ * It has the focus words of the run, the size of each unlabelled file as of the last checkpoint,
+ * the number of windows written for each word, and for each input file how far it has been processed.  A restarted run truncates the unlabelled
+ * files to their checkpoint size (dropping anything written after it) and continues each input
+ * file from its checkpoint position, so no window is lost or written twice.
+ * With deduplicate it also has the fingerprint of each input file started, so a restarted run still
+ * skips the copies of the files read before it stopped.
+ * The checkpoint is removed once step 1 completes
+ *
+ * the file is replaced atomically, one item per line (tab separated):
+ *     focus  word
+ *     output word (or segment filename)  size
+ *     windows word  count
+ *     input  source  position  done  filename
+ *     document  fingerprint (hex)  filename
+ *
+ */
+public class Checkpoint {
+
+    public static final String FILENAME = "step1.checkpoint";
+
+    // the checkpoint file
+    private String filename;
+
+    // the focus words of the run being checkpointed
+    private List<String> focusList;
+
+    // the size in bytes of each unlabelled file (by word) as of the checkpoint
+    private Map<String, Long> outputSizeMap;
+
+    // the number of windows written for each (singular) word as of the checkpoint
+    private Map<String, Integer> windowCountMap;
+
+    // the progress of each input file (by absolute filename) as of the checkpoint
+    private Map<String, InputProgress> inputMap;
+
+    // the fingerprint of each input file started, and the (absolute) filename it was first seen in
+    private Map<Long, String> documentMap;
+
+    /**
+     * the checkpoint of the unlabelled files in a directory
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     */
+    public Checkpoint(String nnetUnlabelledDirectory) {
+        this.filename = nnetUnlabelledDirectory + FILENAME;
+        this.focusList = new ArrayList<>();
+        this.outputSizeMap = new HashMap<>();
+        this.windowCountMap = new HashMap<>();
+        this.inputMap = new ConcurrentHashMap<>();
+        this.documentMap = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return true if there is a checkpoint of an unfinished run
+     */
+    public boolean exists() {
+        return new File(filename).exists();
+    }
+
+    /**
+     * read the checkpoint
+     * @throws IOException file error or invalid checkpoint
+     */
+    public void load() throws IOException {
+        focusList.clear();
+        outputSizeMap.clear();
+        windowCountMap.clear();
+        inputMap.clear();
+        documentMap.clear();
+        List<String> lineList = Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8);
+        for (String line : lineList) {
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\t", -1);
+            if (parts[0].equals("focus") && parts.length == 2) {
+                focusList.add(parts[1]);
+            } else if (parts[0].equals("output") && parts.length == 3) {
+                outputSizeMap.put(parts[1], Long.parseLong(parts[2]));
+            } else if (parts[0].equals("windows") && parts.length == 3) {
+                windowCountMap.put(parts[1], Integer.parseInt(parts[2]));
+            } else if (parts[0].equals("input") && parts.length == 5) {
+                inputMap.put(parts[4], new InputProgress(parts[1], Long.parseLong(parts[2]), parts[3].equals("1")));
+            } else if (parts[0].equals("document") && parts.length == 3) {
+                documentMap.put(Long.parseUnsignedLong(parts[1], 16), parts[2]);
+            } else {
+                throw new IOException("invalid checkpoint line \"" + line + "\" in " + filename);
+            }
+        }
+    }
+
+    /**
+     * write the checkpoint, it replaces the previous one in a single step
+     * @throws IOException file error
+     */
+    public synchronized void save() throws IOException {
+        String tempFilename = filename + ".tmp";
+        try (FileOutputStream out = new FileOutputStream(tempFilename)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writer.write("# step 1 checkpoint\n");
+            for (String word : focusList) {
+                writer.write("focus\t" + word + "\n");
+            }
+            for (Map.Entry<String, Long> entry : outputSizeMap.entrySet()) {
+                writer.write("output\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            for (Map.Entry<String, Integer> entry : windowCountMap.entrySet()) {
+                writer.write("windows\t" + entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            for (Map.Entry<String, InputProgress> entry : inputMap.entrySet()) {
+                InputProgress progress = entry.getValue();
+                writer.write("input\t" + progress.getSource() + "\t" + progress.getPosition() + "\t" +
+                             (progress.isDone() ? "1" : "0") + "\t" + entry.getKey() + "\n");
+            }
+            for (Map.Entry<Long, String> entry : documentMap.entrySet()) {
+                writer.write("document\t" + Long.toHexString(entry.getKey()) + "\t" + entry.getValue() + "\n");
+            }
+            writer.flush();
+            out.getChannel().force(true);
+        }
+        Files.move(Paths.get(tempFilename), Paths.get(filename),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * remove the checkpoint (step 1 has completed)
+     */
+    public void delete() {
+        new File(filename).delete();
+    }
+
+    /**
+     * bring the unlabelled files of the focus words back to their state at the checkpoint,
+     * files not in the checkpoint are removed
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     * @param binary the unlabelled files are in the binary format
+     * @throws IOException file error
+     */
+    public void restoreOutput(String nnetUnlabelledDirectory, boolean binary) throws IOException {
+        for (String word : focusList) {
+            File file = new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, binary));
+            Long size = outputSizeMap.get(word);
+            if (size == null) {
+                if (file.exists() && !file.delete()) {
+                    throw new IOException("can't remove " + file.getAbsolutePath());
+                }
+            } else {
+                if (file.length() < size) {
+                    throw new IOException(file.getAbsolutePath() + " is smaller than its checkpoint size " + size);
+                }
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(size);
+                }
+            }
+        }
+    }
+
+    public List<String> getFocusList() {
+        return focusList;
+    }
+
+    public void setFocusList(List<String> focusList) {
+        this.focusList = focusList;
+    }
+
+    /**
+     * @param name a word (or segment filename)
+     * @return the size of its unlabelled file (segment) as of the checkpoint, or null if it isn't in the checkpoint
+     */
+    public synchronized Long getOutputSize(String name) {
+        return outputSizeMap.get(name);
+    }
+
+    public synchronized void setOutputSizes(Map<String, Long> sizeMap) {
+        this.outputSizeMap.putAll(sizeMap);
+    }
+
+    public synchronized Map<String, Integer> getWindowCounts() {
+        return new HashMap<>(windowCountMap);
+    }
+
+    public synchronized void setWindowCounts(Map<String, Integer> windowCountMap) {
+        this.windowCountMap = windowCountMap;
+    }
+
+    /**
+     * @param filename the absolute filename of an input file
+     * @return its progress, or null if it hasn't been started
+     */
+    public InputProgress getInput(String filename) {
+        return inputMap.get(filename);
+    }
+
+    public void setInput(String filename, InputProgress progress) {
+        inputMap.put(filename, progress);
+    }
+
+    /**
+     * add the fingerprint of an input file that is about to be read
+     * @param fingerprint the fingerprint of the file (see DuplicateFilter.hash(File))
+     * @param filename the absolute filename of the file
+     * @return the filename of an earlier file with the same fingerprint (the file is a copy of it),
+     *         null if there is none (or it is the same file, continued by a restarted run)
+     */
+    public String addDocument(long fingerprint, String filename) {
+        String first = documentMap.putIfAbsent(fingerprint, filename);
+        return (first == null || first.equals(filename)) ? null : first;
+    }
+
+    /**
+     * how far an input file has been processed
+     */
+    public static class InputProgress {
+
+        // what the file is being read from (txt, gz, parsed, cache), its position has the unit of its reader
+        private String source;
+        private long position;
+
+        // the file is complete
+        private boolean done;
+
+        public InputProgress(String source, long position, boolean done) {
+            this.source = source;
+            this.position = position;
+            this.done = done;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+    }
+
+}
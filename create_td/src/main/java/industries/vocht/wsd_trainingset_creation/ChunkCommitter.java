@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * the last stage of step 1: writes the windows of each chunk to the unlabelled files and
+ * commits a checkpoint every so often.  The chunks of a file can arrive in any order
+ * (several threads per stage), they are written in file order so that everything up to
+ * the position of a file in the checkpoint has been written, and nothing after it.
+ * Not thread safe, used by a single thread
+ *
+ */
+public class ChunkCommitter {
+
+    // the unlabelled files (or the segments they're split from)
+    private WindowWriter writer;
+
+    // the ids of the words in the unlabelled files
+    private Vocabulary vocabulary;
+
+    // the windows still wanted, and the windows written before (null: repeats are written)
+    private FocusQuota quota;
+    private DuplicateFilter duplicates;
+
+    // the progress of the run
+    private Checkpoint checkpoint;
+
+    // time between checkpoints
+    private long intervalInNanos;
+    private long lastCommit;
+
+    // the files with chunks in progress
+    private Map<String, FileState> fileMap;
+
+    /**
+     * @param writer the writer of the unlabelled files (or of the segments)
+     * @param vocabulary the words of the unlabelled files, saved with each checkpoint
+     * @param quota counts the windows of each word, the windows of a word that has its target are dropped
+     * @param duplicates drops the repeats of windows written before (null: write all windows)
+     * @param checkpoint the checkpoint to update
+     * @param intervalInSeconds the time between checkpoints
+     */
+    public ChunkCommitter(WindowWriter writer, Vocabulary vocabulary, FocusQuota quota, DuplicateFilter duplicates,
+                          Checkpoint checkpoint, int intervalInSeconds) {
+        this.writer = writer;
+        this.vocabulary = vocabulary;
+        this.quota = quota;
+        this.duplicates = duplicates;
+        this.checkpoint = checkpoint;
+        this.intervalInNanos = intervalInSeconds * 1_000_000_000L;
+        this.lastCommit = System.nanoTime();
+        this.fileMap = new HashMap<>();
+    }
+
+    /**
+     * write the windows of a chunk once all earlier chunks of its file are written
+     * @param chunk the chunk
+     * @throws IOException file error
+     */
+    public void add(DocumentChunk chunk) throws IOException {
+        FileState state = fileMap.computeIfAbsent(chunk.getFilename(), k -> new FileState());
+        state.waitingMap.put(chunk.getSequence(), chunk);
+
+        DocumentChunk next;
+        while ((next = state.waitingMap.remove(state.nextSequence)) != null) {
+            List<String> wordList = next.getWindowWordList();
+            List<int[]> windowList = next.getWindowList();
+            for (int i = 0; i < windowList.size(); i++) {
+                String word = wordList.get(i);
+                int[] window = windowList.get(i);
+                if (quota.isWanted(word) &&
+                        (duplicates == null || duplicates.add(DuplicateFilter.hash(vocabulary.getId(word), window))) &&
+                        writer.write(word, window)) {
+                    quota.add(word);
+                }
+            }
+            checkpoint.setInput(next.getFilename(),
+                    new Checkpoint.InputProgress(next.getSource(), next.getPosition(), next.isEndOfFile()));
+            state.nextSequence = state.nextSequence + 1;
+            if (next.isEndOfFile()) {
+                fileMap.remove(next.getFilename());
+            }
+        }
+
+        if (System.nanoTime() - lastCommit >= intervalInNanos) {
+            commit();
+        }
+    }
+
+    /**
+     * flush the unlabelled files and the vocabulary and save the checkpoint
+     * @throws IOException file error
+     */
+    public void commit() throws IOException {
+        checkpoint.setOutputSizes(writer.sync());
+        checkpoint.setWindowCounts(quota.getCounts());
+        vocabulary.save();
+        checkpoint.save();
+        lastCommit = System.nanoTime();
+    }
+
+    // the chunks of a file waiting for an earlier chunk
+    private static class FileState {
+        private int nextSequence;
+        private TreeMap<Integer, DocumentChunk> waitingMap = new TreeMap<>();
+    }
+
+}
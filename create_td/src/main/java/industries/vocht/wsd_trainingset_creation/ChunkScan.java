@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+ * a scan over a range of windows (or any other index range) split into chunks that run on the
+ * fork/join pool of the calling thread (step 2 runs its words on one).  Each chunk returns a partial
+ * result, the partial results are merged left to right so that a merge that keeps the order of its
+ * two sides gives the same result as a single scan over the whole range
+ *
+ */
+public class ChunkScan<T> extends RecursiveTask<T> {
+
+    /**
+     * the scan of a single chunk
+     */
+    public interface Scanner<T> {
+        T scan(int from, int to);
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    private Scanner<T> scanner;
+    private BinaryOperator<T> merge;
+    private int chunkSize;
+    private int from;
+    private int to;
+
+    private ChunkScan(Scanner<T> scanner, BinaryOperator<T> merge, int chunkSize, int from, int to) {
+        this.scanner = scanner;
+        this.merge = merge;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * scan the range from .. to - 1 in chunks of at most chunkSize
+     * @param from the first index
+     * @param to the index after the last
+     * @param chunkSize the maximum size of a chunk, a range no larger than this is scanned by the calling thread
+     * @param scanner the scan of a chunk, must only read shared data (or write its own part of it)
+     * @param merge merges the results of two neighbouring chunks (left, right)
+     * @return the merged result
+     */
+    public static <T> T scan(int from, int to, int chunkSize, Scanner<T> scanner, BinaryOperator<T> merge) {
+        if (to - from <= chunkSize) {
+            return scanner.scan(from, to);
+        }
+        return new ChunkScan<>(scanner, merge, chunkSize, from, to).invoke();
+    }
+
+    @Override
+    protected T compute() {
+        if (to - from <= chunkSize) {
+            return scanner.scan(from, to);
+        }
+        int middle = (from + to) >>> 1;
+        ChunkScan<T> left = new ChunkScan<>(scanner, merge, chunkSize, from, middle);
+        left.fork();
+        T right = new ChunkScan<>(scanner, merge, chunkSize, middle, to).compute();
+        return merge.apply(left.join(), right);
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a piece of a training file on its way through the step 1 pipeline,
+ * each stage fills in the next part (text, sentences, tokens + tags, windows)
+ *
+ */
+public class DocumentChunk {
+
+    // the file this chunk came from
+    private String filename;
+
+    // the number of this chunk in its file (0, 1, ...), chunks are written in this order
+    private int sequence;
+
+    // what the file was read from (txt, gz, parsed, cache) and the position in it after this chunk
+    private String source;
+    private long position;
+
+    // the last chunk of its file (without data)
+    private boolean endOfFile;
+
+    // blocks of text, each is sentence split on its own (a .txt chunk, or the lines of a .gz file)
+    private List<String> textList;
+
+    // the text of each sentence after sentence boundary detection
+    private List<String> sentenceTextList;
+
+    // the tokenized (and tagged) sentences
+    private List<Sentence> sentenceList;
+
+    // sentences dropped by the tokenizer (no focus words)
+    private int skippedSentenceCount;
+
+    // set once the sentences have their penn tags (pre-parsed files already have them)
+    private boolean tagged;
+
+    // where the tagged sentences of this chunk are cached, null if not cached
+    private SentenceCacheWriter cacheWriter;
+
+    // the windows (the vocabulary ids of their words) found for the focus words, and the (singular) word each one belongs to
+    private List<String> windowWordList;
+    private List<int[]> windowList;
+
+    public DocumentChunk(String filename) {
+        this.filename = filename;
+        this.textList = new ArrayList<>();
+        this.sentenceTextList = new ArrayList<>();
+        this.sentenceList = new ArrayList<>();
+        this.windowWordList = new ArrayList<>();
+        this.windowList = new ArrayList<>();
+    }
+
+    /**
+     * add a window for a word
+     * @param word the singular word the window belongs to
+     * @param window the vocabulary ids of the words of the window
+     */
+    public void addWindow(String word, int[] window) {
+        windowWordList.add(word);
+        windowList.add(window);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(int sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public void setPosition(long position) {
+        this.position = position;
+    }
+
+    public boolean isEndOfFile() {
+        return endOfFile;
+    }
+
+    public void setEndOfFile(boolean endOfFile) {
+        this.endOfFile = endOfFile;
+    }
+
+    public List<String> getTextList() {
+        return textList;
+    }
+
+    public List<String> getSentenceTextList() {
+        return sentenceTextList;
+    }
+
+    public List<Sentence> getSentenceList() {
+        return sentenceList;
+    }
+
+    public void setSentenceList(List<Sentence> sentenceList) {
+        this.sentenceList = sentenceList;
+    }
+
+    public int getSkippedSentenceCount() {
+        return skippedSentenceCount;
+    }
+
+    public void setSkippedSentenceCount(int skippedSentenceCount) {
+        this.skippedSentenceCount = skippedSentenceCount;
+    }
+
+    public boolean isTagged() {
+        return tagged;
+    }
+
+    public void setTagged(boolean tagged) {
+        this.tagged = tagged;
+    }
+
+    public SentenceCacheWriter getCacheWriter() {
+        return cacheWriter;
+    }
+
+    public void setCacheWriter(SentenceCacheWriter cacheWriter) {
+        this.cacheWriter = cacheWriter;
+    }
+
+    public List<String> getWindowWordList() {
+        return windowWordList;
+    }
+
+    public List<int[]> getWindowList() {
+        return windowList;
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a fixed size set of 64 bit fingerprints for dropping repeated sentences and windows
+ * (mirrored pages and boilerplate of web corpora).  The table never grows: it is split into
+ * buckets of a few fingerprints, a full bucket forgets its oldest fingerprint.  So a repeat
+ * can be missed once the table is full (the set is lossy), but a new item is never taken for a
+ * repeat (unless two fingerprints collide, 1 in 2^64).  Thread safe.
+ *
+ * the fingerprints are not part of the checkpoint, a restarted step 1 starts with an empty set
+ * (the fingerprints of whole input files are, see Checkpoint.addDocument())
+ *
+ */
+public class DuplicateFilter {
+
+    // fingerprints per bucket, and the number of locks the buckets share
+    private static final int BUCKET_SIZE = 4;
+    private static final int LOCKS = 64;
+
+    // buckets of fingerprints, 0 is an empty slot
+    private long[] table;
+    private int bucketMask;
+    private Object[] locks;
+
+    // items checked, and the repeats found
+    private AtomicLong checkedCount = new AtomicLong();
+    private AtomicLong duplicateCount = new AtomicLong();
+
+    /**
+     * @param memoryInBytes the size of the table
+     */
+    public DuplicateFilter(long memoryInBytes) {
+        long buckets = 1;
+        while (buckets * 2 * BUCKET_SIZE * 8 <= memoryInBytes && buckets < (1 << 26)) {
+            buckets = buckets * 2;
+        }
+        table = new long[(int)buckets * BUCKET_SIZE];
+        bucketMask = (int)buckets - 1;
+        locks = new Object[LOCKS];
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * add a fingerprint to the set
+     * @param fingerprint the fingerprint of an item (see hash())
+     * @return true if the item is new, false if it's a repeat (already in the set)
+     */
+    public boolean add(long fingerprint) {
+        if (fingerprint == 0) {
+            fingerprint = 1;
+        }
+        checkedCount.incrementAndGet();
+        int bucket = (int)(fingerprint >>> 32) & bucketMask;
+        int start = bucket * BUCKET_SIZE;
+        synchronized (locks[bucket & (LOCKS - 1)]) {
+            for (int i = start; i < start + BUCKET_SIZE; i++) {
+                if (table[i] == fingerprint) {
+                    duplicateCount.incrementAndGet();
+                    return false;
+                }
+                if (table[i] == 0) {
+                    table[i] = fingerprint;
+                    return true;
+                }
+            }
+            // full, forget the oldest
+            System.arraycopy(table, start, table, start + 1, BUCKET_SIZE - 1);
+            table[start] = fingerprint;
+            return true;
+        }
+    }
+
+    /**
+     * the fingerprint of a text that ignores white-space and (ascii) case
+     * @param text the text
+     * @return its fingerprint
+     */
+    public static long hash(CharSequence text) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            if (ch >= 'A' && ch <= 'Z') {
+                ch = (char)(ch + ('a' - 'A'));
+            }
+            h = (h ^ ch) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * the fingerprint of the bytes of a file, an exact copy of a file (under another name) has the same one
+     * @param file the file
+     * @return its fingerprint
+     * @throws IOException file error
+     */
+    public static long hash(File file) throws IOException {
+        long h = 0xcbf29ce484222325L ^ file.length();
+        byte[] buffer = new byte[SentenceCache.BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                for (int i = 0; i < count; i++) {
+                    h = (h ^ (buffer[i] & 0xff)) * 0x100000001b3L;
+                }
+            }
+        }
+        return mix(h);
+    }
+
+    /**
+     * the fingerprint of a window of a word
+     * @param wordId the id of the (singular) word
+     * @param window the ids of the words of the window
+     * @return its fingerprint
+     */
+    public static long hash(int wordId, int[] window) {
+        long h = 0xcbf29ce484222325L ^ wordId;
+        for (int id : window) {
+            h = (h ^ id) * 0x100000001b3L;
+        }
+        return mix(h ^ window.length);
+    }
+
+    // spread the bits of a hash (murmur3 finalizer)
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    public long getCheckedCount() {
+        return checkedCount.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * @return the percentage of the items checked that were repeats
+     */
+    public double getDuplicatePercentage() {
+        long checked = checkedCount.get();
+        return checked > 0 ? (double)(duplicateCount.get() * 100) / checked : 0.0;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * a read-only set of focus words that can be checked against utf-8 bytes in place,
+ * without creating a String for each token.  The check ignores ascii case, the same
+ * as focus.contains(text.toLowerCase()) for the (ascii) words in the lexicon
+ *
+ */
+public class FocusMatcher {
+
+    // open addressing hash table of the lower case utf-8 bytes of each word
+    private byte[][] table;
+    private int mask;
+
+    /**
+     * create a matcher for a set of words
+     * @param wordSet the words to look for
+     */
+    public FocusMatcher(Collection<String> wordSet) {
+        int capacity = 16;
+        while (capacity < wordSet.size() * 4) {
+            capacity = capacity * 2;
+        }
+        table = new byte[capacity][];
+        mask = capacity - 1;
+        for (String word : wordSet) {
+            byte[] bytes = word.toLowerCase().getBytes(StandardCharsets.UTF_8);
+            int index = hash(bytes) & mask;
+            while (table[index] != null && !equals(table[index], bytes)) {
+                index = (index + 1) & mask;
+            }
+            table[index] = bytes;
+        }
+    }
+
+    /**
+     * check if the bytes from start to end (exclusive) are one of the focus words
+     * @param buffer the buffer holding the bytes, it isn't modified
+     * @param start the offset of the first byte
+     * @param end the offset after the last byte
+     * @return true if the bytes are a focus word (ignoring ascii case)
+     */
+    public boolean contains(ByteBuffer buffer, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + lower(buffer.get(i));
+        }
+        int index = h & mask;
+        byte[] word;
+        while ((word = table[index]) != null) {
+            if (word.length == end - start) {
+                int i = 0;
+                while (i < word.length && word[i] == lower(buffer.get(start + i))) {
+                    i++;
+                }
+                if (i == word.length) {
+                    return true;
+                }
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * check if the characters from start to end (exclusive) are one of the focus words
+     * @param chars the characters, they aren't modified
+     * @param start the offset of the first character
+     * @param end the offset after the last character
+     * @return true if the characters are a focus word (the same as focus.contains(text.toLowerCase()))
+     */
+    public boolean contains(char[] chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            char ch = chars[i];
+            if (ch >= 128) {
+                // not ascii (rare), compare the utf-8 bytes of its lower case form
+                return contains(new String(chars, start, end - start).toLowerCase().getBytes(StandardCharsets.UTF_8));
+            }
+            h = 31 * h + lower((byte)ch);
+        }
+        int index = h & mask;
+        byte[] word;
+        while ((word = table[index]) != null) {
+            if (word.length == end - start) {
+                int i = 0;
+                while (i < word.length && word[i] == lower((byte)chars[start + i])) {
+                    i++;
+                }
+                if (i == word.length) {
+                    return true;
+                }
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    // check the (lower case) bytes of a word
+    private boolean contains(byte[] bytes) {
+        int index = hash(bytes) & mask;
+        while (table[index] != null) {
+            if (equals(table[index], bytes)) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 0;
+        for (byte b : bytes) {
+            h = 31 * h + lower(b);
+        }
+        return h;
+    }
+
+    private static boolean equals(byte[] a, byte[] b) {
+        if (a.length != b.length) {
+            return false;
+        }
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // lower case for ascii A..Z, everything else as is
+    private static byte lower(byte b) {
+        if (b >= 'A' && b <= 'Z') {
+            return (byte)(b + ('a' - 'A'));
+        }
+        return b;
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * the focus words step 1 is still looking for.  A word that has its target number of windows
+ * (targetWindowsPerWord) is satisfied: it leaves the active focus set, so the pre-filter, the tagger
+ * and the window stage no longer look for it (or its plural), and its further windows are dropped.
+ * The run is done once every word is satisfied, or once all words together have targetWindowsTotal
+ * windows; the readers then stop reading input.  Targets <= 0 are unlimited.
+ *
+ * the counts are kept by the (single) write thread, the matchers of the active words are replaced
+ * as a whole so the other stages can use them without locking
+ *
+ */
+public class FocusQuota {
+
+    // the windows wanted for each (singular) word, and for all words together
+    private int targetWindowsPerWord;
+    private long targetWindowsTotal;
+
+    // the focus words (singular and plural) and the ambiguous sets of the lexicon
+    private Map<String, WordnetAmbiguousSet> map;
+    private Set<String> activeSet;
+
+    // the windows written so far, by (singular) word, and for all words
+    private Map<String, Integer> countMap;
+    private long total;
+
+    // the matchers of the active words
+    private boolean prefilter;
+    private volatile FocusMatcher matcher;
+    private volatile FocusScanner scanner;
+
+    private volatile boolean done;
+
+    /**
+     * @param focus the focus words (singular and plural)
+     * @param map the ambiguous sets of the lexicon
+     * @param targetWindowsPerWord the windows wanted for each word (unlimited if <= 0)
+     * @param targetWindowsTotal the windows wanted for all words together (unlimited if <= 0)
+     * @param prefilter create a FocusScanner for the active words
+     * @param countMap the windows already written for each word (by an earlier run), as of its checkpoint
+     */
+    public FocusQuota(Set<String> focus, Map<String, WordnetAmbiguousSet> map, int targetWindowsPerWord,
+                      long targetWindowsTotal, boolean prefilter, Map<String, Integer> countMap) {
+        this.targetWindowsPerWord = targetWindowsPerWord;
+        this.targetWindowsTotal = targetWindowsTotal;
+        this.map = map;
+        this.activeSet = new HashSet<>(focus);
+        this.countMap = new HashMap<>(countMap);
+        this.prefilter = prefilter;
+        for (Map.Entry<String, Integer> entry : this.countMap.entrySet()) {
+            total = total + entry.getValue();
+            if (isSatisfied(entry.getValue())) {
+                remove(entry.getKey());
+            }
+        }
+        this.matcher = new FocusMatcher(activeSet);
+        this.scanner = prefilter ? new FocusScanner(activeSet, null) : null;
+        this.done = activeSet.isEmpty() || (targetWindowsTotal > 0 && total >= targetWindowsTotal);
+    }
+
+    /**
+     * @param word the (singular) word of a window
+     * @return true if the word still needs windows
+     */
+    public boolean isWanted(String word) {
+        return !done && !isSatisfied(countMap.getOrDefault(word, 0));
+    }
+
+    /**
+     * count a window written for a word, the word leaves the active set once it has its target
+     * @param word the (singular) word of the window
+     */
+    public void add(String word) {
+        int count = countMap.getOrDefault(word, 0) + 1;
+        countMap.put(word, count);
+        total = total + 1;
+        if (isSatisfied(count)) {
+            remove(word);
+            System.out.println(word + ": has its " + count + " windows, " + activeSet.size() + " focus words left");
+            matcher = new FocusMatcher(activeSet);
+            if (prefilter) {
+                scanner = new FocusScanner(activeSet, scanner);
+            }
+        }
+        if (activeSet.isEmpty() || (targetWindowsTotal > 0 && total >= targetWindowsTotal)) {
+            if (!done) {
+                System.out.println("step 1: all focus words have their windows (" + total + "), no more input is read");
+            }
+            done = true;
+        }
+    }
+
+    private boolean isSatisfied(int count) {
+        return targetWindowsPerWord > 0 && count >= targetWindowsPerWord;
+    }
+
+    // remove a word and its plural from the active set
+    private void remove(String word) {
+        activeSet.remove(word);
+        WordnetAmbiguousSet set = map.get(word);
+        if (set != null && set.getWordPlural() != null) {
+            activeSet.remove(set.getWordPlural());
+        }
+    }
+
+    /**
+     * @return true once no more windows are wanted, the input need not be read any further
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * @return a matcher of the active words
+     */
+    public FocusMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * @return a scanner of the active words, null if there is no pre-filter
+     */
+    public FocusScanner getScanner() {
+        return scanner;
+    }
+
+    /**
+     * @return the windows written so far, by (singular) word (a copy, for the checkpoint)
+     */
+    public Map<String, Integer> getCounts() {
+        return new HashMap<>(countMap);
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a fast check whether a block of raw text (bytes or characters) can contain any of the focus words,
+ * so text without any of them can be dropped before sentence boundary detection and tokenizing.
+ *
+ * The tokenizer turns a run of letters into a single text token, so a focus word can only
+ * produce a window where it is a complete run of letters.  The scanner walks every run of ascii
+ * letters through a trie of all the focus words (singular and plural) at the same time,
+ * one table lookup per byte, and reports a match when a run ends on a complete word.
+ * Anything that isn't an ascii letter ends a run; this can only report more matches
+ * than the tokenizer would find (never fewer), so no window is lost
+ *
+ */
+public class FocusScanner {
+
+    // the letters a-z
+    private static final int ALPHABET = 26;
+
+    // no focus word starts with the letters seen so far in this run
+    private static final int DEAD = 0;
+    private static final int ROOT = 1;
+
+    // 1 + the letter index of each byte / ascii character, 0 for all others
+    private static final byte[] letterIndex = new byte[256];
+
+    static {
+        for (int ch = 'a'; ch <= 'z'; ch++) {
+            letterIndex[ch] = (byte)(ch - 'a' + 1);
+            letterIndex[ch - 'a' + 'A'] = (byte)(ch - 'a' + 1);
+        }
+    }
+
+    // the trie: the next state of (state * ALPHABET + letter), and whether a state completes a focus word
+    private int[] transition;
+    private boolean[] terminal;
+
+    // a focus word that can't be checked this way (non ascii letters), all text matches
+    private boolean matchAll;
+
+    // characters / bytes scanned and dropped, for statistics
+    private AtomicLong scannedSize = new AtomicLong();
+    private AtomicLong droppedSize = new AtomicLong();
+
+    /**
+     * create a scanner for a set of focus words
+     * @param wordSet the words to look for
+     */
+    public FocusScanner(Collection<String> wordSet) {
+        this(wordSet, null);
+    }
+
+    /**
+     * create a scanner for a set of focus words
+     * @param wordSet the words to look for
+     * @param previous the scanner this one replaces, its statistics are continued (null: none)
+     */
+    public FocusScanner(Collection<String> wordSet, FocusScanner previous) {
+        if (previous != null) {
+            scannedSize = previous.scannedSize;
+            droppedSize = previous.droppedSize;
+        }
+        List<int[]> transitionList = new ArrayList<>();
+        List<Boolean> terminalList = new ArrayList<>();
+        transitionList.add(new int[ALPHABET]); // dead
+        terminalList.add(false);
+        transitionList.add(new int[ALPHABET]); // root
+        terminalList.add(false);
+
+        for (String word : wordSet) {
+            String lowerWord = word.toLowerCase();
+            if (!isPossibleToken(lowerWord)) {
+                continue; // can't be a single text token, can never produce a window
+            }
+            int state = ROOT;
+            for (int i = 0; i < lowerWord.length(); i++) {
+                char ch = lowerWord.charAt(i);
+                if (ch >= 128 || letterIndex[ch] == 0) {
+                    matchAll = true; // a letter outside a-z
+                    break;
+                }
+                int letter = letterIndex[ch] - 1;
+                if (transitionList.get(state)[letter] == DEAD) {
+                    transitionList.get(state)[letter] = transitionList.size();
+                    transitionList.add(new int[ALPHABET]);
+                    terminalList.add(false);
+                }
+                state = transitionList.get(state)[letter];
+            }
+            terminalList.set(state, true);
+        }
+
+        transition = new int[transitionList.size() * ALPHABET];
+        terminal = new boolean[transitionList.size()];
+        for (int state = 0; state < transitionList.size(); state++) {
+            System.arraycopy(transitionList.get(state), 0, transition, state * ALPHABET, ALPHABET);
+            terminal[state] = terminalList.get(state);
+        }
+        terminal[ROOT] = false;
+    }
+
+    /**
+     * check raw bytes of an ascii compatible character set (utf-8, iso-8859-1) for a focus word
+     * @param buffer the bytes
+     * @param start the offset of the first byte
+     * @param end the offset after the last byte
+     * @return true if the bytes can contain a focus word as a complete token
+     */
+    public boolean find(byte[] buffer, int start, int end) {
+        if (matchAll) {
+            return true;
+        }
+        int state = ROOT;
+        for (int i = start; i < end; i++) {
+            int letter = letterIndex[buffer[i] & 0xff];
+            if (letter != 0) {
+                state = transition[state * ALPHABET + letter - 1];
+            } else {
+                if (terminal[state]) {
+                    return true;
+                }
+                state = ROOT;
+            }
+        }
+        return terminal[state];
+    }
+
+    /**
+     * check text for a focus word
+     * @param text the text
+     * @return true if the text can contain a focus word as a complete token
+     */
+    public boolean find(CharSequence text) {
+        if (matchAll) {
+            return true;
+        }
+        int state = ROOT;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char ch = text.charAt(i);
+            int letter = (ch < 128) ? letterIndex[ch] : 0;
+            if (letter != 0) {
+                state = transition[state * ALPHABET + letter - 1];
+            } else {
+                if (terminal[state]) {
+                    return true;
+                }
+                state = ROOT;
+            }
+        }
+        return terminal[state];
+    }
+
+    /**
+     * keep statistics of the text scanned
+     * @param size the size of the text scanned
+     * @param dropped true if the text was dropped
+     */
+    public void count(long size, boolean dropped) {
+        scannedSize.addAndGet(size);
+        if (dropped) {
+            droppedSize.addAndGet(size);
+        }
+    }
+
+    /**
+     * @return the percentage of the scanned text that was dropped
+     */
+    public double getDroppedPercentage() {
+        long scanned = scannedSize.get();
+        return scanned > 0 ? (double)(droppedSize.get() * 100) / scanned : 0.0;
+    }
+
+    /**
+     * @return true if the word could be a single text token (all letters)
+     */
+    private static boolean isPossibleToken(String word) {
+        if (word.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (!TokenizerConstants.isABC(word.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
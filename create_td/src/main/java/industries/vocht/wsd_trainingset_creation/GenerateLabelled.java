@@ -13,6 +13,9 @@ package industries.vocht.wsd_trainingset_creation;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 /**
@@ -25,6 +28,9 @@ import java.util.stream.Collectors;
  */
 public class GenerateLabelled {
 
+    // the number of windows of a word scanned as one chunk, larger words are scanned in chunks on the fork/join pool
+    private int chunkSize = 262144;
+
     public GenerateLabelled() {
     }
 
@@ -35,14 +41,22 @@ public class GenerateLabelled {
      * @param failThreshold the % at which to split success samples vs. failed samples (default 66.0)
      * @param collectorCount how many top frequency items to collect / keep (default: 2000)
      * @param minUnlabelledDataRequired the min number of samples required for an unlabelled set to be used
+     * @param numThreads the number of words labelled at the same time (0: one per processor)
+     * @param memoryInBytes the memory the windows of the words labelled at the same time can take (0: half the heap)
+     * @param chunkSize the number of windows of a word scanned as one chunk (0: the default)
      * @param wordArray an optional list of words to focus on (can be null)
      * @throws IOException file error
      */
     public void create(String dataPath, String output_directories, double failThreshold,
-                       int collectorCount, int minUnlabelledDataRequired, String... wordArray) throws IOException {
+                       int collectorCount, int minUnlabelledDataRequired, int numThreads, long memoryInBytes,
+                       int chunkSize, String... wordArray) throws IOException {
 
         System.out.println("step 2: generating labelled data from unlabelled in " + output_directories);
 
+        if ( chunkSize > 0 ) {
+            this.chunkSize = chunkSize;
+        }
+
         if ( !output_directories.endsWith("/") ) {
             output_directories += "/";
         }
@@ -56,6 +70,10 @@ public class GenerateLabelled {
         String labelledTrainingSetDirectory = output_directories + "labelled/";
         new File(labelledTrainingSetDirectory).mkdirs();
 
+        // the words of the binary unlabelled files (if any), and the senses of the lexicon
+        Vocabulary vocabulary = Vocabulary.open(nnetUnlabelledDirectory);
+        vocabulary.addLexicon(originalMap);
+
         // setup what words to look for
         HashSet<String> focus = new HashSet<>();
         if (wordArray == null || wordArray.length == 0) {
@@ -73,7 +91,7 @@ public class GenerateLabelled {
         List<String> toRemove = new ArrayList<>();
         for ( String word : focus ) {
             if ( map.get(word).getWordPlural() == null || !map.get(word).getWordPlural().equals(word) ) {
-                if ( !new File(inputFilename(nnetUnlabelledDirectory, word)).exists() ||
+                if ( !UnlabelledReader.exists(nnetUnlabelledDirectory, word) ||
                         new File(outputFilename(labelledTrainingSetDirectory, word)).exists() ) {
                     toRemove.add(word);
                     if ( map.get(word).getWordPlural() != null ) {
@@ -92,205 +110,400 @@ public class GenerateLabelled {
             return;
         }
 
-        // process each word in the set
+        // the largest words first (by the memory their windows take), so that no large word is left running on its
+        // own at the end.  A word waits for memory before it is handed to the pool, the words running at the same
+        // time keep their estimated memory within memoryLimit (a word larger than memoryLimit runs on its own)
+        List<String> wordList = new ArrayList<>();
+        Map<String, Long> memorySizeMap = new HashMap<>();
         for ( String word : focus ) {
-
-            // no unlabelled data?
-            File current = new File(inputFilename(nnetUnlabelledDirectory, word));
-            if ( !current.exists() || current.length() == 0) {
-                continue;
+            if ( UnlabelledReader.hasWindows(nnetUnlabelledDirectory, word) ) {
+                wordList.add(word);
+                memorySizeMap.put(word, UnlabelledReader.getMemorySize(nnetUnlabelledDirectory, word));
+            }
+        }
+        wordList.sort((w1, w2) -> {
+            int cmp = Long.compare(memorySizeMap.get(w2), memorySizeMap.get(w1));
+            return cmp != 0 ? cmp : w1.compareTo(w2);
+        });
+
+        int threads = (numThreads > 0) ? numThreads : Runtime.getRuntime().availableProcessors();
+        long memoryLimit = (memoryInBytes > 0) ? memoryInBytes : Runtime.getRuntime().maxMemory() / 2;
+        System.out.println("step 2: labelling " + wordList.size() + " words on " + threads + " threads");
+
+        // process each word in the set, each word only reads and writes files of its own.  The console output
+        // of a word is written in one piece when it is done
+        MemoryBudget budget = new MemoryBudget(memoryLimit);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<ForkJoinTask<Void>> taskList = new ArrayList<>();
+        try {
+            for ( String word : wordList ) {
+                long memorySize = Math.min(memorySizeMap.get(word), memoryLimit);
+                budget.acquire(memorySize);
+                if ( taskList.stream().anyMatch(ForkJoinTask::isCompletedAbnormally) ) {
+                    budget.release(memorySize);
+                    break; // a word failed, don't start any more
+                }
+                taskList.add(pool.submit(() -> {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    try ( PrintStream log = new PrintStream(buffer, true) ) {
+                        labelWord(word, map.get(word), originalMap.get(word).getSetList(), vocabulary,
+                                  nnetUnlabelledDirectory, labelledTrainingSetDirectory, failThreshold,
+                                  collectorCount, minUnlabelledDataRequired, log);
+                    } finally {
+                        budget.release(memorySize);
+                        System.out.print(buffer.toString());
+                    }
+                    return null;
+                }));
             }
+            for ( ForkJoinTask<Void> task : taskList ) {
+                task.get();
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException("step 2 interrupted", ex);
+        } catch (ExecutionException ex) {
+            if ( ex.getCause() instanceof IOException ) {
+                throw (IOException)ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
 
-            // gather frequencies
-            String wordPlural = map.get(word).getWordPlural();
-            List<WordWithFrequency> wordWithFrequencyList = gatherFrequencies(
-                    inputFilename(nnetUnlabelledDirectory, word), word, wordPlural, collectorCount );
+    }
 
-            // now - create the vector lookup map from the top list
-            HashSet<String> vectorLookup =
-                    wordWithFrequencyList.stream().map(WordWithFrequency::getWord).collect(Collectors.toCollection(HashSet::new));
+    /**
+     * label the windows of a single word: gather the top frequencies, expand the sets (senses) of the word
+     * from them and write the labelled (and failed) windows of the word
+     * @param word the word
+     * @param ambiguousSet the sets of the word (updated)
+     * @param originalSet the sets of the word as read from the lexicon
+     * @param vocabulary the words of the unlabelled files, with the senses of the lexicon
+     * @param nnetUnlabelledDirectory where to read the unlabelled windows
+     * @param labelledTrainingSetDirectory where to write the labelled files
+     * @param failThreshold the % at which to split success samples vs. failed samples
+     * @param collectorCount how many top frequency items to collect / keep
+     * @param minUnlabelledDataRequired the min number of samples required for an unlabelled set to be used
+     * @param log the console output of the word
+     * @throws IOException file error
+     */
+    private void labelWord( String word, WordnetAmbiguousSet ambiguousSet, List<HashSet<String>> originalSet,
+                            Vocabulary vocabulary, String nnetUnlabelledDirectory, String labelledTrainingSetDirectory,
+                            double failThreshold, int collectorCount, int minUnlabelledDataRequired,
+                            PrintStream log ) throws IOException {
 
-            // get the success rate for the initial coverage
-            int trainingSetSize = getSuccessRate(inputFilename(nnetUnlabelledDirectory, word), word, wordPlural, vectorLookup);
-            if (trainingSetSize < minUnlabelledDataRequired) {
-                System.out.println("skipping word \"" + word + "\", not enough training data (min required " + minUnlabelledDataRequired +
-                                   ", actual found " + trainingSetSize + ")");
-                continue;
-            }
+        // read the windows once, all the passes below go over them in memory
+        String wordPlural = ambiguousSet.getWordPlural();
+        WindowCorpus corpus = WindowCorpus.load(UnlabelledReader.open(nnetUnlabelledDirectory, word, vocabulary),
+                                                word, wordPlural, vocabulary);
 
-            System.out.println("processing word " + word);
+        // gather frequencies
+        List<WordWithFrequency> wordWithFrequencyList = gatherFrequencies(corpus, collectorCount);
 
-            // rate the set iteratively until it stabalises
-            WordnetAmbiguousSet ambiguousSet = map.get(word);
-            List<HashSet<String>> set = ambiguousSet.getSetList();
-            List<HashSet<String>> originalSet = originalMap.get(word).getSetList();
-            rateSet(nnetUnlabelledDirectory, word, wordPlural, set, originalSet);
+        // now - create the vector lookup map from the top list
+        HashSet<String> vectorLookup =
+                wordWithFrequencyList.stream().map(WordWithFrequency::getWord).collect(Collectors.toCollection(HashSet::new));
 
-            int iteration = 1;
-            boolean stable;
-            do {
+        // get the success rate for the initial coverage
+        int trainingSetSize = getSuccessRate(corpus, word, vectorLookup, log);
+        if (trainingSetSize < minUnlabelledDataRequired) {
+            log.println("skipping word \"" + word + "\", not enough training data (min required " + minUnlabelledDataRequired +
+                               ", actual found " + trainingSetSize + ")");
+            return;
+        }
 
-                iteration = iteration + 1;
+        log.println("processing word " + word);
 
-                // calculate the success rate given Peter's lexicon
-                List<HashSet<String>> collectionSet = new ArrayList<>();
-                for ( int i = 0; i < set.size(); i++ ) {
-                    collectionSet.add(new HashSet<>());
-                }
+        // rate the set iteratively until it stabalises
+        // (the sets keep the order the words are added in, so the "// new" lines of the output are the same every run)
+        List<HashSet<String>> set = ambiguousSet.getSetList();
+        for (int i = 0; i < set.size(); i++) {
+            set.set(i, new LinkedHashSet<>(set.get(i)));
+        }
+        SenseTable senses = new SenseTable(corpus, vocabulary, word, set.size());
+        rateSet(corpus, word, senses, set, originalSet, log);
 
-                // re-read the unlabelled set and check its new success rate
-                try (BufferedReader br = new BufferedReader(new FileReader(inputFilename(nnetUnlabelledDirectory, word)))) {
-
-                    // for each line in the wiki training set
-                    for (String line; (line = br.readLine()) != null; ) {
-
-                        // split csv
-                        if (line.length() > 0) {
-
-                            // find unique items
-                            int[] counts = new int[set.size()];
-                            String[] parts = line.split(",");
-                            for (String part : parts) {
-                                if (part.compareToIgnoreCase(word) != 0 && (wordPlural == null || wordPlural.compareToIgnoreCase(word) != 0)) {
-                                    for (int i = 0; i < set.size(); i++) {
-                                        HashSet<String> hs = set.get(i);
-                                        if (hs.contains(part.toLowerCase().trim())) {
-                                            counts[i] = counts[i] + 1;
-                                        }
-                                    }
-                                }
-                            } // for each part of the csv
-
-                            // is this a mono example?
-                            int index = getBestIndex(counts);
-                            if (index >= 0) {
-
-                                // collect all of the items that aren't part of this set - as they might be
-                                HashSet<String> extraItems = new HashSet<>();
-                                for (String part : parts) {
-                                    String key = part.toLowerCase().trim();
-                                    if (key.compareToIgnoreCase(word) != 0 && (wordPlural == null || wordPlural.compareToIgnoreCase(key) != 0)) {
-                                        int numSets = 0;
-                                        for (int i = 0; i < set.size(); i++) {
-                                            HashSet<String> hs = set.get(i);
-                                            if ( !hs.contains(key) ) {
-                                                numSets = numSets + 1;
-                                            }
-                                        }
-                                        if ( numSets == set.size() ) { // none of the sets contained it
-                                            extraItems.add(key);
-                                        }
-                                    }
-                                } // for each part of the csv
-
-                                // add these extra items to the collection sets for the unique items
-                                collectionSet.get(index).addAll(extraItems);
-                            }
-
-                        } // if line not empty
-
-                    } // read a line at a time
-
-                } // try for each line
-
-                // the collection sets are now to be filtered by unique items for each set
-                // to acquire new "learning" pattern items
-                stable = true;
-                collectionSet = filterDuplicates(collectionSet);
-                for (int i = 0; i < collectionSet.size(); i++) {
-                    if ( collectionSet.get(i).size() > 0 ) {
-                        stable = false;
-                    }
-                    set.get(i).addAll(collectionSet.get(i));
-                }
+        int iterations = expandSets(corpus, set, senses);
+        log.println(word + ": sets stable after " + iterations + " iterations");
 
-            } while (!stable);
+        // rate the set for the last time
+        String resultStr = rateSet(corpus, word, senses, set, originalSet, log);
+        double successRate = rateSetForScore(corpus, senses);
 
+        // output examples with labels for the second training set
+        PrintWriter writer2 = null;
 
+        PrintWriter writer = new PrintWriter(outputFilename(labelledTrainingSetDirectory, word));
+        if ( successRate < failThreshold ) {
+            writer2 = new PrintWriter(outputFilenameFail(labelledTrainingSetDirectory, word));
+        }
+        writer.write(resultStr);
+
+        // label the windows in chunks on the pool and write them in order, a batch of chunks at a time
+        // so that no more than the text of one batch is kept in memory
+        boolean keepFailed = writer2 != null;
+        int batchSize = (int)Math.min(Integer.MAX_VALUE, (long)chunkSize * getParallelism());
+        for (int batchStart = 0; batchStart < corpus.size(); ) {
+            int batchEnd = (int)Math.min(corpus.size(), (long)batchStart + batchSize);
+            List<StringBuilder[]> textList = ChunkScan.scan(batchStart, batchEnd, chunkSize,
+                    (from, to) -> labelWindows(corpus, senses, from, to, keepFailed), GenerateLabelled::concat);
+            for (StringBuilder[] text : textList) {
+                writer.append(text[0]);
+                if ( writer2 != null ) {
+                    writer2.append(text[1]);
+                }
+            }
+            batchStart = batchEnd;
+        }
 
+        writer.close();
+        if ( writer2 != null ) {
+            writer2.close();
+        }
 
-            // rate the set for the last time
-            String resultStr = rateSet(nnetUnlabelledDirectory, word, wordPlural, set, originalSet);
-            double successRate = rateSetForScore(nnetUnlabelledDirectory, word, wordPlural, set, originalSet);
 
-            // output examples with labels for the second training set
-            try ( BufferedReader br = new BufferedReader(new FileReader(inputFilename(nnetUnlabelledDirectory, word)) ) ) {
+        // get the top collectorSize words for the failed training set if it
+        // was less than a threshold
+        if ( successRate < failThreshold ) {
+            WindowCorpus failedCorpus = WindowCorpus.load(
+                    UnlabelledReader.openCsv(outputFilenameFail(labelledTrainingSetDirectory, word)), word, wordPlural,
+                    vocabulary);
+            List<WordWithFrequency> failedList = gatherFrequencies(failedCorpus, collectorCount);
+            if ( failedList != null ) {
+                PrintWriter frequencyWriter = new PrintWriter(outputFilenameFailFrequencies(labelledTrainingSetDirectory, word));
+                for ( WordWithFrequency wwf : failedList ) {
+                    frequencyWriter.write(wwf.getWord() + "\n");
+                }
+                frequencyWriter.close();
+            }
+        }
 
-                PrintWriter writer2 = null;
+    }
 
-                PrintWriter writer = new PrintWriter(outputFilename(labelledTrainingSetDirectory, word));
-                if ( successRate < failThreshold ) {
-                    writer2 = new PrintWriter(outputFilenameFail(labelledTrainingSetDirectory, word));
-                }
-                writer.write(resultStr);
-
-                // for each line in the wiki training set
-                for (String line; (line = br.readLine()) != null; ) {
-
-                    // split csv
-                    if ( line.length() > 0 ) {
-
-                        int[] counts = new int[set.size()];
-                        String[] parts = line.split(",");
-                        for (String part : parts) {
-                            String key = part.toLowerCase().trim();
-                            for ( int i = 0; i < set.size(); i++ ) {
-                                if (set.get(i).contains(key) ) {
-                                    counts[i] = counts[i] + 1;
-                                }
-                            }
-                        } // for each part of the csv
-
-                        int index = getBestIndex(counts);
-                        StringBuilder sb = new StringBuilder();
-                        sb.append(index).append("|");
-                        int counter = 0;
-                        for (String part : parts) {
-                            String key = part.toLowerCase().trim();
-                            if ( counter > 0 ) {
-                                sb.append(",");
-                            }
-                            sb.append(key);
-                            counter = counter + 1;
-                        }
-                        sb.append("\n");
-                        if ( index >= 0 ) {
-                            writer.write(sb.toString());
-                        } else if ( writer2 != null ) {
-                            writer2.write(sb.toString());
-                        }
-
-                    } // if line not empty
-
-                } // read a line at a time
-
-                writer.close();
-                if ( writer2 != null ) {
-                    writer2.close();
+    /**
+     * label the windows from .. to - 1 with the index of their set, -1 if not unique
+     * @param keepFailed true to keep the windows without a label too
+     * @return the labelled windows and the ones without a label, one line per window
+     */
+    private List<StringBuilder[]> labelWindows( WindowCorpus corpus, SenseTable senses, int from, int to,
+                                                boolean keepFailed ) {
+        StringBuilder labelled = new StringBuilder();
+        StringBuilder failed = new StringBuilder();
+        int[] ids = corpus.getIds();
+        int[] counts = new int[senses.getNumSenses()];
+        for (int line = from; line < to; line++) {
+
+            Arrays.fill(counts, 0);
+            for (int p = corpus.getStart(line); p < corpus.getEnd(line); p++) {
+                senses.count(corpus.getKeyId(ids[p]), counts);
+            } // for each part of the window
+
+            int index = getBestIndex(counts);
+            if ( index < 0 && !keepFailed ) {
+                continue;
+            }
+            StringBuilder sb = (index >= 0) ? labelled : failed;
+            sb.append(index).append("|");
+            int counter = 0;
+            for (int p = corpus.getStart(line); p < corpus.getEnd(line); p++) {
+                if ( counter > 0 ) {
+                    sb.append(",");
                 }
+                sb.append(corpus.getKey(ids[p]));
+                counter = counter + 1;
+            }
+            sb.append("\n");
 
-            } // try for each line
+        } // for each window
+        List<StringBuilder[]> textList = new ArrayList<>();
+        textList.add(new StringBuilder[] {labelled, failed});
+        return textList;
+    }
 
+    // merge the partial results of two neighbouring chunks
+    private static <T> List<T> concat( List<T> left, List<T> right ) {
+        left.addAll(right);
+        return left;
+    }
 
-            // get the top collectorSize words for the failed training set if it
-            // was less than a threshold
-            if ( successRate < failThreshold ) {
-                List<WordWithFrequency> failedList = gatherFrequencies(
-                        outputFilenameFail(labelledTrainingSetDirectory, word), word, wordPlural, collectorCount);
-                if ( failedList != null ) {
-                    PrintWriter writer = new PrintWriter(outputFilenameFailFrequencies(labelledTrainingSetDirectory, word));
-                    for ( WordWithFrequency wwf : failedList ) {
-                        writer.write(wwf.getWord() + "\n");
-                    }
-                    writer.close();
+    private static int[] sum( int[] left, int[] right ) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] = left[i] + right[i];
+        }
+        return left;
+    }
+
+    /**
+     * @return the number of threads of the fork/join pool of this thread, 1 if it isn't in one
+     */
+    private static int getParallelism() {
+        return ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism() : 1;
+    }
+
+    /**
+     * add the context words of the windows each set labels (that are in none of the sets) to the
+     * sets until they no longer change.  The label of a window can only change when a word of it is
+     * added to a set, so after the first pass only the windows of the added words are labelled
+     * again (found with the inverted index of the corpus), and the candidate words of each label
+     * are counted per window instead of being collected from all the windows on each iteration
+     * @param corpus the windows of the word
+     * @param set the sets (senses) of the word, updated
+     * @param senses the senses of the keys of the corpus, updated with set
+     * @return the number of iterations
+     */
+    private int expandSets( WindowCorpus corpus, List<HashSet<String>> set, SenseTable senses ) {
+        int numSenses = senses.getNumSenses();
+        int numKeys = corpus.getNumKeys();
+        corpus.buildIndex();
+
+        // the label of each window, for each label the number of windows each candidate key is in,
+        // and the candidate keys of each label that aren't in any set yet
+        int[] labelArray = new int[corpus.size()];
+        int[][] keyCounts = new int[numSenses][numKeys];
+        BitSet[] candidates = new BitSet[numSenses];
+        for (int i = 0; i < numSenses; i++) {
+            candidates[i] = new BitSet(numKeys);
+        }
+        // label the windows in chunks, then count the candidates of each label on its own
+        ChunkScan.scan(0, corpus.size(), chunkSize, (from, to) -> {
+            int[] counts = new int[numSenses];
+            for (int line = from; line < to; line++) {
+                labelArray[line] = getLabel(corpus, line, senses, counts);
+            }
+            return null;
+        }, (left, right) -> null);
+        ChunkScan.scan(0, numSenses, 1, (from, to) -> {
+            boolean[] seenByLabel = new boolean[numKeys];
+            for (int line = 0; line < corpus.size(); line++) {
+                if (labelArray[line] >= from && labelArray[line] < to) {
+                    countCandidates(corpus, line, labelArray[line], 1, keyCounts, candidates, senses, seenByLabel);
+                }
+            }
+            return null;
+        }, (left, right) -> null);
+        boolean[] seen = new boolean[numKeys];
+
+        int iteration = 1;
+        int[] relabelled = new int[corpus.size()];
+        Arrays.fill(relabelled, -1);
+        int[] lineArray = new int[corpus.size()];
+        int[] newLabelArray = new int[corpus.size()];
+        boolean stable;
+        do {
+
+            iteration = iteration + 1;
+
+            // the candidates are now to be filtered by unique items for each set
+            // to acquire new "learning" pattern items
+            stable = true;
+            BitSet[] uniqueSet = filterDuplicates(candidates);
+            // (the keys of a set are added in the order they first appear in the windows)
+            List<Integer> addedList = new ArrayList<>();
+            for (int i = 0; i < numSenses; i++) {
+                List<Integer> keyList = new ArrayList<>();
+                for (int k = uniqueSet[i].nextSetBit(0); k >= 0; k = uniqueSet[i].nextSetBit(k + 1)) {
+                    keyList.add(k);
+                }
+                keyList.sort(Comparator.comparingInt(corpus::getKeyFirstId));
+                for (int k : keyList) {
+                    stable = false;
+                    set.get(i).add(corpus.getKeyText(k));
+                    senses.add(k, i);
+                    addedList.add(k);
+                }
+            }
+            for (int k : addedList) {
+                for (BitSet bits : candidates) {
+                    bits.clear(k);
                 }
             }
 
+            // label the windows of the added keys again (in chunks), and move the candidates of the
+            // windows with a new label (the counts don't depend on the order of the windows)
+            int[] index = corpus.getIndex();
+            int numLines = 0;
+            for (int k : addedList) {
+                for (int p = corpus.getIndexStart(k); p < corpus.getIndexEnd(k); p++) {
+                    int line = index[p];
+                    if (relabelled[line] != iteration) {
+                        relabelled[line] = iteration;
+                        lineArray[numLines] = line;
+                        numLines = numLines + 1;
+                    }
+                }
+            }
+            ChunkScan.scan(0, numLines, chunkSize, (from, to) -> {
+                int[] counts = new int[numSenses];
+                for (int i = from; i < to; i++) {
+                    newLabelArray[i] = getLabel(corpus, lineArray[i], senses, counts);
+                }
+                return null;
+            }, (left, right) -> null);
+            for (int i = 0; i < numLines; i++) {
+                int line = lineArray[i];
+                int label = newLabelArray[i];
+                if (label != labelArray[line]) {
+                    countCandidates(corpus, line, labelArray[line], -1, keyCounts, candidates, senses, seen);
+                    countCandidates(corpus, line, label, 1, keyCounts, candidates, senses, seen);
+                    labelArray[line] = label;
+                }
+            }
 
+        } while (!stable);
+        return iteration;
+    }
 
-        } // for each word
+    /**
+     * count the context words of a window in each set
+     * @param counts the count of each set, overwritten
+     */
+    private void countSenses( WindowCorpus corpus, int line, SenseTable senses, int[] counts ) {
+        Arrays.fill(counts, 0);
+        int[] ids = corpus.getIds();
+        for (int p = corpus.getStart(line); p < corpus.getEnd(line); p++) {
+            int id = ids[p];
+            if (corpus.isContext(id)) {
+                senses.count(corpus.getKeyId(id), counts);
+            }
+        }
+    }
 
+    /**
+     * @param counts scratch space, one per set
+     * @return the label of a window: the index of the set with the most context words of the window, -1 if not unique
+     */
+    private int getLabel( WindowCorpus corpus, int line, SenseTable senses, int[] counts ) {
+        countSenses(corpus, line, senses, counts);
+        return getBestIndex(counts);
+    }
 
+    /**
+     * add (delta 1) or remove (delta -1) the candidate keys of a window to / from the counts of its label
+     * and keep the candidates of the label up to date
+     */
+    private void countCandidates( WindowCorpus corpus, int line, int label, int delta, int[][] keyCounts,
+                                  BitSet[] candidates, SenseTable senses, boolean[] seen ) {
+        if (label < 0) {
+            return;
+        }
+        int[] ids = corpus.getIds();
+        int[] counts = keyCounts[label];
+        for (int p = corpus.getStart(line); p < corpus.getEnd(line); p++) {
+            int id = ids[p];
+            int k = corpus.getKeyId(id);
+            if (corpus.isCandidate(id) && !seen[k]) {
+                seen[k] = true; // each key of the window once
+                counts[k] = counts[k] + delta;
+                if (counts[k] == 0) {
+                    candidates[label].clear(k);
+                } else if (counts[k] == 1 && delta > 0 && !senses.isInAny(k)) {
+                    candidates[label].set(k);
+                }
+            }
+        }
+        for (int p = corpus.getStart(line); p < corpus.getEnd(line); p++) {
+            seen[corpus.getKeyId(ids[p])] = false;
+        }
     }
 
     /**
@@ -320,70 +533,15 @@ public class GenerateLabelled {
     }
 
     // rate a set for matches and return the success score as a percentage 0..100 (double)
-    private String rateSet( String nnetUnlabelledDirectory, String word, String wordPlural,
-                            List<HashSet<String>> set, List<HashSet<String>> originalSet ) throws IOException {
+    private String rateSet( WindowCorpus corpus, String word, SenseTable senses, List<HashSet<String>> set,
+                            List<HashSet<String>> originalSet, PrintStream log ) {
         // test the accuracy of the set(s)
-        int numMatches = 0;
-        int numNotMatches = 0;
-        int numAmbiguous = 0;
-
-        int[] sampleCounts = new int[set.size()];  // keep track of each sample's count
-
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFilename(nnetUnlabelledDirectory, word)))) {
-
-            // for each line in the wiki training set
-            for (String line; (line = br.readLine()) != null; ) {
-
-                // split csv
-                if ( line.length() > 0 ) {
-
-                    // find unique items
-                    int[] counts = new int[set.size()];
-                    String[] parts = line.split(",");
-                    for (String part : parts) {
-                        if ( part.compareToIgnoreCase(word) != 0 && ( wordPlural == null || wordPlural.compareToIgnoreCase(word) != 0 ) ) {
-                            for ( int i = 0; i < set.size(); i++ ) {
-                                HashSet<String> hs = set.get(i);
-                                if ( hs.contains(part.toLowerCase().trim()) ) {
-                                    counts[i] = counts[i] + 1;
-                                }
-                            }
-                        }
-                    } // for each part of the csv
-
-                    // is this a mono example?
-                    int numLargerThanZero = 0;
-                    int bestCount = -1;
-                    int bestCountIndex = -1;
-                    for (int i = 0; i < counts.length; i++) {
-                        int count = counts[i];
-                        if ( count > bestCount ) {
-                            bestCount = count;
-                            bestCountIndex = i;
-                            numLargerThanZero = 1;
-                        } else  if (count == bestCount) {
-                            numLargerThanZero = numLargerThanZero + 1;
-                        }
-                    }
-
-                    // exactly one?
-                    if (numLargerThanZero == 1) {
-                        numMatches = numMatches + 1;
-                        if (bestCountIndex >= 0 && bestCountIndex < sampleCounts.length) {
-                            sampleCounts[bestCountIndex] += 1;
-                        }
-                    } else if ( numLargerThanZero == 0 ) {
-                        numNotMatches = numNotMatches + 1;
-                    } else if ( numLargerThanZero > 1 ) {
-                        numAmbiguous = numAmbiguous + 1;
-                    }
-
-                } // if line not empty
-
-            } // read a line at a time
-
-        } // try for each line
+        int[] rating = rateWindows(corpus, senses);
+        int numMatches = rating[0];
+        int numNotMatches = rating[1];
+        int numAmbiguous = rating[2];
 
+        int[] sampleCounts = Arrays.copyOfRange(rating, 3, 3 + set.size());  // keep track of each sample's count
 
         int total = numMatches + numNotMatches + numAmbiguous;
         StringBuilder sb = new StringBuilder();
@@ -422,125 +580,128 @@ public class GenerateLabelled {
 
         sb.append("// ").append(word).append(":========================================================================\n");
 
-        System.out.println(word + ":matched:" + numMatches + ", ambiguous:" + numAmbiguous);
-        System.out.println(word + ":matched rate  :" + ((double)(numMatches * 100) / (double)total));
-        System.out.println(word + ":non match rate:" + ((double)(numAmbiguous * 100) / (double)total));
-        System.out.println(word + ":========================================================================");
+        log.println(word + ":matched:" + numMatches + ", ambiguous:" + numAmbiguous);
+        log.println(word + ":matched rate  :" + ((double)(numMatches * 100) / (double)total));
+        log.println(word + ":non match rate:" + ((double)(numAmbiguous * 100) / (double)total));
+        log.println(word + ":========================================================================");
 
         return sb.toString();
     }
 
     // rate a set for matches and return the success score as a percentage 0..100 (double)
-    private double rateSetForScore( String nnetUnlabelledDirectory, String word, String wordPlural,
-                                    List<HashSet<String>> set, List<HashSet<String>> originalSet ) throws IOException {
+    private double rateSetForScore( WindowCorpus corpus, SenseTable senses ) {
         // test the accuracy of the set(s)
-        int numMatches = 0;
-        int numNotMatches = 0;
-        int numAmbiguous = 0;
-        try ( BufferedReader br = new BufferedReader(new FileReader(inputFilename(nnetUnlabelledDirectory, word)) ) ) {
-
-            // for each line in the wiki training set
-            for (String line; (line = br.readLine()) != null; ) {
-
-                // split csv
-                if ( line.length() > 0 ) {
-
-                    // find unique items
-                    int[] counts = new int[set.size()];
-                    String[] parts = line.split(",");
-                    for (String part : parts) {
-                        if ( part.compareToIgnoreCase(word) != 0 && ( wordPlural == null || wordPlural.compareToIgnoreCase(word) != 0 ) ) {
-                            for ( int i = 0; i < set.size(); i++ ) {
-                                HashSet<String> hs = set.get(i);
-                                if ( hs.contains(part.toLowerCase().trim()) ) {
-                                    counts[i] = counts[i] + 1;
-                                }
-                            }
-                        }
-                    } // for each part of the csv
-
-                    // is this a mono example?
-                    int numLargerThanZero = 0;
-                    int bestCount = -1;
-                    for ( int i = 0; i < counts.length; i++ ) {
-                        int count = counts[i];
-                        if ( count > bestCount ) {
-                            bestCount = count;
-                            numLargerThanZero = 1;
-                        } else  if ( count == bestCount ) {
-                            numLargerThanZero = numLargerThanZero + 1;
-                        }
-                    }
-
-                    // exactly one?
-                    if ( numLargerThanZero == 1 ) {
-                        numMatches = numMatches + 1;
-                    } else if ( numLargerThanZero == 0 ) {
-                        numNotMatches = numNotMatches + 1;
-                    } else if ( numLargerThanZero > 1 ) {
-                        numAmbiguous = numAmbiguous + 1;
-                    }
-
-                } // if line not empty
-
-            } // read a line at a time
-
-        } // try for each line
-
+        int[] rating = rateWindows(corpus, senses);
+        int numMatches = rating[0];
+        int numNotMatches = rating[1];
+        int numAmbiguous = rating[2];
 
         int total = numMatches + numNotMatches + numAmbiguous;
         return ((double)(numMatches * 100) / (double)total);
     }
 
-    // filter out items that aren't unique and return the filters
-    private List<HashSet<String>> filterDuplicates( List<HashSet<String>> set ) {
-
-        List<HashSet<String>> collectionSet = new ArrayList<>();
-        for ( int i = 0; i < set.size(); i++ ) {
-            collectionSet.add(new HashSet<>());
-        }
-
-        for ( int i = 0; i < set.size(); i++ ) {
-
-            for ( String str : set.get(i) ) {
-
-                boolean found = false;
-                for ( int j = 0; j < set.size(); j++ ) {
-                    if ( i != j ) {
-                        if ( set.get(j).contains(str) ) {
-                            found = true;
-                        }
+    /**
+     * count the windows with a unique set (matches), without one and with more than one (ambiguous), in chunks
+     * @return the number of matches, non matches and ambiguous windows, followed by the matches of each set
+     */
+    private int[] rateWindows( WindowCorpus corpus, SenseTable senses ) {
+        int numSenses = senses.getNumSenses();
+        return ChunkScan.scan(0, corpus.size(), chunkSize, (from, to) -> {
+            int[] rating = new int[3 + numSenses];
+            int[] counts = new int[numSenses];
+            for (int line = from; line < to; line++) {
+
+                // find unique items
+                countSenses(corpus, line, senses, counts);
+
+                // is this a mono example?
+                int numLargerThanZero = 0;
+                int bestCount = -1;
+                int bestCountIndex = -1;
+                for (int i = 0; i < counts.length; i++) {
+                    int count = counts[i];
+                    if ( count > bestCount ) {
+                        bestCount = count;
+                        bestCountIndex = i;
+                        numLargerThanZero = 1;
+                    } else  if (count == bestCount) {
+                        numLargerThanZero = numLargerThanZero + 1;
                     }
                 }
 
-                if ( !found ) {
-                    collectionSet.get(i).add( str );
+                // exactly one?
+                if (numLargerThanZero == 1) {
+                    rating[0] = rating[0] + 1;
+                    if (bestCountIndex >= 0) {
+                        rating[3 + bestCountIndex] += 1;
+                    }
+                } else if ( numLargerThanZero == 0 ) {
+                    rating[1] = rating[1] + 1;
+                } else if ( numLargerThanZero > 1 ) {
+                    rating[2] = rating[2] + 1;
                 }
-            }
+
+            } // for each window
+            return rating;
+        }, GenerateLabelled::sum);
+    }
+
+    // filter out items that aren't unique (in more than one set) and return the filters
+    private BitSet[] filterDuplicates( BitSet[] set ) {
+
+        // the items seen in one set so far, and the ones seen in more than one
+        BitSet once = new BitSet();
+        BitSet more = new BitSet();
+        for ( BitSet bits : set ) {
+            BitSet both = (BitSet)bits.clone();
+            both.and(once);
+            more.or(both);
+            once.or(bits);
+        }
+
+        BitSet[] collectionSet = new BitSet[set.length];
+        for ( int i = 0; i < set.length; i++ ) {
+            collectionSet[i] = (BitSet)set[i].clone();
+            collectionSet[i].andNot(more);
         }
         return collectionSet;
     }
 
-    // increment the frequency for a word
-    private void collectFrequency( String word, Map<String, Integer> map ) {
-        if ( word != null && word.length() > 2 && map != null ) {
-            String wordStr = word.toLowerCase().trim();
-            if ( !wordStr.equals("null") ) {
-                Integer value = map.get(wordStr);
-                if (value == null) {
-                    map.put(wordStr, 1);
-                } else {
-                    map.put(wordStr, value + 1);
+    /**
+     * count the keys of the windows from .. to - 1, not counting the focus word (or its plural)
+     * @return the count of each key id, and the offset (in corpus.getIds()) of the part each key was first counted at
+     */
+    private int[][] countFrequencies( WindowCorpus corpus, int from, int to ) {
+        int numKeys = corpus.getNumKeys();
+        int[] counts = new int[numKeys];
+        int[] first = new int[numKeys];
+        Arrays.fill(first, Integer.MAX_VALUE);
+
+        // the parts that count (key: the word in lower case, trimmed)
+        int[] ids = corpus.getIds();
+        for (int p = corpus.getStart(from); p < corpus.getStart(to); p++) {
+            int id = ids[p];
+            // collect frequencies of all words, but not the original word itself
+            if ( corpus.isContext(id) && corpus.getPart(id).length() > 2 && !corpus.getKey(id).equals("null") ) {
+                int k = corpus.getKeyId(id);
+                if ( counts[k] == 0 ) {
+                    first[k] = p;
                 }
+                counts[k] = counts[k] + 1;
             }
         }
+        return new int[][] {counts, first};
     }
 
-
-    private String inputFilename( String nnetUnlabelledDirectory, String word ) {
-        return nnetUnlabelledDirectory + word + "-trainingset.csv";
+    private static int[][] mergeFrequencies( int[][] left, int[][] right ) {
+        for (int k = 0; k < left[0].length; k++) {
+            left[0][k] = left[0][k] + right[0][k];
+            left[1][k] = Math.min(left[1][k], right[1][k]);
+        }
+        return left;
     }
 
+
     private String outputFilename( String labelledTrainingSetDirectory, String word ) {
         return labelledTrainingSetDirectory + word + "-labelled-trainingset.csv";
     }
@@ -555,39 +716,30 @@ public class GenerateLabelled {
 
 
     /**
-     * gather the top collectorCount items with frequencies for word / wordPlural
-     * @param filename the file to read for frequency items (text file, csv)
-     * @param word the word to ignore, the original focus word
-     * @param wordPlural (optional, can be null), the plural of word
+     * gather the top collectorCount items with frequencies, not counting the focus word (or its plural)
+     * @param corpus the windows to read for frequency items
      * @param collectorCount the number of top frequencies maximum to return (or zero for no limites)
      * @return a list of word frequencies
      */
-    private List<WordWithFrequency> gatherFrequencies( String filename, String word, String wordPlural, int collectorCount ) throws IOException {
-        // gather frequencies
+    private List<WordWithFrequency> gatherFrequencies( WindowCorpus corpus, int collectorCount ) {
+        // gather frequencies by key id in chunks, with the part each key was first counted at
+        int numKeys = corpus.getNumKeys();
+        int[][] frequency = ChunkScan.scan(0, corpus.size(), chunkSize,
+                (from, to) -> countFrequencies(corpus, from, to), GenerateLabelled::mergeFrequencies);
+
+        // the keys go into the map in the order they were first counted in, the same map (and
+        // iteration order) as counting them one window after the other
+        List<Integer> keyIdList = new ArrayList<>();
+        for (int k = 0; k < numKeys; k++) {
+            if ( frequency[0][k] > 0 ) {
+                keyIdList.add(k);
+            }
+        }
+        keyIdList.sort(Comparator.comparingInt(k -> frequency[1][k]));
         Map<String, Integer> frequencyMap = new HashMap<>();
-
-        // read line by line
-        // open the wiki set (plain text) for reading
-        try ( BufferedReader br = new BufferedReader(new FileReader(filename) ) ) {
-
-            // for each line in the wiki training set
-            for (String line; (line = br.readLine()) != null; ) {
-
-                // split csv
-                if ( line.length() > 0 ) {
-                    String[] parts = line.split(",");
-                    for (String part : parts) {
-                        // collect frequencies of all words, but not the original word itself
-                        if ( part.compareToIgnoreCase(word) != 0 && ( wordPlural == null || wordPlural.compareToIgnoreCase(word) != 0 ) ) {
-                            collectFrequency(part, frequencyMap);
-                        }
-                    } // for each part of the csv
-
-                } // if line not empty
-
-            } // read a line at a time
-
-        } // try for each line
+        for ( int k : keyIdList ) {
+            frequencyMap.put(corpus.getKeyText(k), frequency[0][k]);
+        }
 
         // analyse the frequency map and cut it down to collectorCount size if its > 0
         List<WordWithFrequency> wordWithFrequencyList = new ArrayList<>();
@@ -606,56 +758,76 @@ public class GenerateLabelled {
 
     /**
      * score / output the success rate of a training set
-     * @param filename the file to read for frequency items (text file, csv)
-     * @param word the word to ignore, the original focus word
-     * @param wordPlural (optional, can be null), the plural of word
+     * @param corpus the windows to score
+     * @param word the original focus word
      * @param vectorLookup the vector of top words
+     * @param log the console output of the word
      * @return the total number of items in the set
      */
-    private int getSuccessRate(String filename, String word, String wordPlural, HashSet<String> vectorLookup) throws IOException {
-        // read line by line
-        // open the unlabelled set for re-reading
-        int numSuccess = 0;
-        int numFailed = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-
-            // for each line in the unlabelled training set
-            for (String line; (line = br.readLine()) != null; ) {
-
-                // split csv
-                if ( line.length() > 0 ) {
-                    String[] parts = line.split(",");
-                    boolean found = false;
-                    for (String part : parts) {
-                        if ( part.compareToIgnoreCase(word) != 0 && ( wordPlural == null || wordPlural.compareToIgnoreCase(word) != 0 ) ) {
-                            if ( vectorLookup.contains(part) ) {
-                                found = true;
-                                break;
-                            }
-                        }
-                    } // for each part of the csv
-                    if ( found ) {
-                        numSuccess++;
-                    } else {
-                        numFailed++;
-                    }
-
-                } // if line not empty
-
-            } // read a line at a time
+    private int getSuccessRate(WindowCorpus corpus, String word, HashSet<String> vectorLookup, PrintStream log) {
+        // the parts in the vector, looked up once per id
+        boolean[] inVector = new boolean[corpus.getNumIds()];
+        for (int id = 0; id < inVector.length; id++) {
+            inVector[id] = corpus.isContext(id) && vectorLookup.contains(corpus.getPart(id));
+        }
 
-        } // try for each line
+        // for each window, in chunks
+        int[] ids = corpus.getIds();
+        int numSuccess = ChunkScan.scan(0, corpus.size(), chunkSize, (from, to) -> {
+            int success = 0;
+            for (int line = from; line < to; line++) {
+                for (int p = corpus.getStart(line); p < corpus.getEnd(line); p++) {
+                    if ( inVector[ids[p]] ) {
+                        success++;
+                        break;
+                    }
+                } // for each part of the window
+            }
+            return success;
+        }, Integer::sum);
+        int numFailed = corpus.size() - numSuccess;
 
         // output success / fail ration
-        System.out.println(word + ":top " + vectorLookup.size() + " success rate");
+        log.println(word + ":top " + vectorLookup.size() + " success rate");
 
         int total = numFailed + numSuccess;
-        System.out.println(word + ":success:" + numSuccess + ", failed:" + numFailed);
-        System.out.println(word + ":success rate:" + ((double)(numSuccess * 100) / (double)total));
-        System.out.println(word + ":fail rate:" + ((double)(numFailed * 100) / (double)total));
+        log.println(word + ":success:" + numSuccess + ", failed:" + numFailed);
+        log.println(word + ":success rate:" + ((double)(numSuccess * 100) / (double)total));
+        log.println(word + ":fail rate:" + ((double)(numFailed * 100) / (double)total));
 
         return total;
     }
 
+
+    /**
+     * the memory (in bytes) taken by the words being labelled, a word waits for its share before it starts
+     */
+    private static class MemoryBudget {
+
+        private long limit;
+        private long used;
+
+        MemoryBudget(long limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * wait until size bytes are free (or nothing else is running) and take them
+         * @param size the memory of a word, no more than the limit
+         */
+        synchronized void acquire(long size) throws InterruptedException {
+            while (used > 0 && used + size > limit) {
+                wait();
+            }
+            used = used + size;
+        }
+
+        synchronized void release(long size) {
+            used = used - size;
+            notifyAll();
+        }
+
+    }
+
 }
 
@@ -11,21 +11,36 @@
 
 package industries.vocht.wsd_trainingset_creation;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by peter on 25/05/16.
  *
  * create training data from a large text set using the semantic lexicon lexicon
  *
+ * the files are processed by a pipeline: read -> sentence split -> tokenize -> tag -> window -> write
+ * with its own threads for each stage (see wsd.properties)
  *
  */
 public class GenerateUnlabelled {
 
+    private static Logger logger = LoggerFactory.getLogger(GenerateUnlabelled.class);
+
+    // the number of pre-parsed sentences handed to parseSingle at a time
+    private static final int PARSED_BATCH_SIZE = 1000;
+
+    // what an input file is read from, for the checkpoint
+    private static final String SOURCE_TXT = "txt";
+    private static final String SOURCE_GZ = "gz";
+    private static final String SOURCE_PARSED = "parsed";
+    private static final String SOURCE_CACHE = "cache";
+
     public GenerateUnlabelled() {
     }
 
@@ -36,15 +51,11 @@ public class GenerateUnlabelled {
      *
      * @param trainingSetFileDirectory the training set files base directory (only scans one level deep for *.txt)
      * @param output_directories where to write the resulting files
-     * @param maxFileSizeInBytes an optional limit (in bytes) to the generated file size (if <=0, ignored)
-     * @param windowSize the size of the windows, try 25
+     * @param settings the window size, file limits and thread counts of each stage
      * @param wordArray a list of focus words (all if null)
      */
     public void create( String dataPath, String trainingSetFileDirectory, String output_directories,
-                        long maxFileSizeInBytes, int windowSize, String... wordArray ) throws Exception {
-
-        // setup the open nlp parser
-        NLPParser parser = new NLPParser(dataPath);
+                        UnlabelledSettings settings, String... wordArray ) throws Exception {
 
         System.out.println("step 1: reading each .txt file in " + trainingSetFileDirectory);
 
@@ -60,212 +71,620 @@ public class GenerateUnlabelled {
         // get the ambiguous map sets - from Peter's semantic lexicon
         Map<String, WordnetAmbiguousSet> map = WordnetAmbiguousSet.readFromFile(dataPath);
 
-        // setup what words to look for - these can be filtered to look for a subset for testing
+        // write the windows as csv lines or as records of word ids
+        boolean binary = settings.getUnlabelledFormat().equals(UnlabelledWriter.FORMAT_BINARY);
+
+        // a run that didn't complete continues from its checkpoint, with the same focus words
+        Checkpoint checkpoint = new Checkpoint(nnetUnlabelledDirectory);
         HashSet<String> focus = new HashSet<>();
-        if ( wordArray == null || wordArray.length == 0 ) {
-            focus.addAll( map.keySet() ); // all words?
-        } else { // or parameters?
-            for ( String word : wordArray ) {
-                if ( !map.containsKey(word) ) {
-                    throw new IOException("unknown focus word \"" + word + "\"");
+        if ( checkpoint.exists() ) {
+            checkpoint.load();
+            focus.addAll(checkpoint.getFocusList());
+            System.out.println("step 1: continuing an earlier run from " + Checkpoint.FILENAME + " (" + focus.size() + " focus words)");
+
+        } else {
+
+            // setup what words to look for - these can be filtered to look for a subset for testing
+            if ( wordArray == null || wordArray.length == 0 ) {
+                focus.addAll( map.keySet() ); // all words?
+            } else { // or parameters?
+                for ( String word : wordArray ) {
+                    if ( !map.containsKey(word) ) {
+                        throw new IOException("unknown focus word \"" + word + "\"");
+                    }
+                    focus.add(word);
                 }
-                focus.add(word);
             }
-        }
 
-        // remove words that have already been processed - because this process can be slow
-        List<String> toRemove = new ArrayList<>();
-        for ( String word : focus ) {
-            if ( map.get(word).getWordPlural() == null || !map.get(word).getWordPlural().equals(word) ) {
-                if ( new File(outputFilename(nnetUnlabelledDirectory, word)).exists() ) {
-                    toRemove.add(word);
-                    if ( map.get(word).getWordPlural() != null ) {
-                        toRemove.add(map.get(word).getWordPlural());
+            // remove words that have already been processed - because this process can be slow
+            List<String> toRemove = new ArrayList<>();
+            for ( String word : focus ) {
+                if ( map.get(word).getWordPlural() == null || !map.get(word).getWordPlural().equals(word) ) {
+                    if ( new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, binary)).exists() ) {
+                        toRemove.add(word);
+                        if ( map.get(word).getWordPlural() != null ) {
+                            toRemove.add(map.get(word).getWordPlural());
+                        }
                     }
                 }
             }
-        }
-        for ( String str : toRemove ) {
-            focus.remove(str);
+            for ( String str : toRemove ) {
+                focus.remove(str);
+            }
+
+            // do we have anything left to process?
+            if (focus.size() == 0) {
+                System.out.println("step 1: all items already processed, skipping step 1.");
+                return;
+            }
+            checkpoint.setFocusList(new ArrayList<>(focus));
+
         }
 
-        // do we have anything left to process?
-        if (focus.size() == 0) {
-            System.out.println("step 1: all items already processed, skipping step 1.");
+        // for each file that ends in .txt
+        File folder = new File(trainingSetFileDirectory);
+        File[] listOfFiles = folder.listFiles();
+        if (listOfFiles == null) {
             return;
         }
 
-        Map<String, PrintWriter> openFileSet = new HashMap<>();
-        Map<String, Long> openFileSize = new HashMap<>();
+        // remove anything written after the last checkpoint
+        checkpoint.restoreOutput(nnetUnlabelledDirectory, binary);
+        checkpoint.save();
+
+        // the ids of the words in the windows, kept with the unlabelled files
+        Vocabulary vocabulary = Vocabulary.open(nnetUnlabelledDirectory);
+        vocabulary.addUndesirables(undesirables);
+        vocabulary.addLexicon(map);
+        vocabulary.save();
+
+        // setup the open nlp parsers, one for each sentence splitter and tagger thread
+        // the models load in the background while the first files are read
+        NLPParserPool parserPool = new NLPParserPool(dataPath, settings.getSplitterThreads() + settings.getParserThreads());
+
+        // the windows go straight to the file of each word, or to segments that are split at the end
+        // (the sample of a word is only known once all its windows have been seen)
+        boolean segmented = settings.isSegmentedOutput() || settings.getMaxWindowsPerWord() > 0;
+        WindowWriter writer;
+        if (segmented) {
+            writer = new SegmentLog(nnetUnlabelledDirectory, settings.getSegmentSizeInBytes(), settings.getMaxWindowsPerWord(),
+                                    vocabulary, checkpoint);
+        } else {
+            writer = new UnlabelledWriter(nnetUnlabelledDirectory, settings.getMaxFileSizeInBytes(), vocabulary, binary,
+                                          settings.getWriteBufferSizeInBytes());
+        }
+        // the focus words that still need windows (all of them without targets), each stage
+        // takes the matchers of the words still active for each chunk
+        FocusQuota quota = new FocusQuota(focus, map, settings.getTargetWindowsPerWord(), settings.getTargetWindowsTotal(),
+                                          settings.isFocusPrefilter(), checkpoint.getWindowCounts());
+        AtomicInteger lineCounter = new AtomicInteger();
+
+        // sentences seen by the tagger, and the ones it actually had to tag
+        AtomicLong sentenceCounter = new AtomicLong();
+        AtomicLong taggedCounter = new AtomicLong();
+        boolean tagFocusOnly = settings.isTagFocusSentencesOnly();
+
+        // repeated sentences and windows are dropped (if set), half the memory for each
+        long duplicateMemory = settings.getDeduplicateMemoryInBytes() / 2;
+        DuplicateFilter sentenceDuplicates = settings.isDeduplicate() ? new DuplicateFilter(duplicateMemory) : null;
+        DuplicateFilter windowDuplicates = settings.isDeduplicate() ? new DuplicateFilter(duplicateMemory) : null;
+
+        // and the copies of whole input files (their fingerprints are kept in the checkpoint)
+        AtomicLong documentDuplicates = settings.isDeduplicate() ? new AtomicLong() : null;
+
+        // the tagged sentences of each file are kept (if set) so the next run doesn't need to parse them again
+        SentenceCache cache = null;
+        if (settings.getSentenceCacheDirectory().length() > 0) {
+            cache = new SentenceCache(settings.getSentenceCacheDirectory(), settings.isCompactTokens());
+        }
+        SentenceCache sentenceCache = cache;
+
+        Pipeline pipeline = new Pipeline(settings.getQueueSize());
+
+        // read the files, several at a time, in chunks
+        Pipeline.Stage<File, DocumentChunk> readStage = pipeline.addSource("read", settings.getReaderThreads(),
+                Arrays.asList(listOfFiles),
+                () -> (file, output) -> readFile(file, settings, quota, sentenceCache, checkpoint, documentDuplicates, output));
+
+        // sentence boundary detection
+        Pipeline.Stage<DocumentChunk, DocumentChunk> splitStage = pipeline.addStage("sentence-split",
+                settings.getSplitterThreads(), readStage, () -> new Pipeline.Processor<DocumentChunk, DocumentChunk>() {
+                    // taken from the pool when first needed (waits for the models to load)
+                    private NLPParser parser;
+
+                    @Override
+                    public void process(DocumentChunk chunk, Pipeline.Output<DocumentChunk> output) throws Exception {
+                        if (chunk.getTextList().size() > 0) {
+                            if (parser == null) {
+                                parser = parserPool.take();
+                            }
+                            splitSentences(parser, chunk);
+                        }
+                        output.put(chunk);
+                    }
+
+                    @Override
+                    public void close() {
+                        parserPool.release(parser);
+                    }
+                });
+
+        // tokenize each sentence
+        Pipeline.Stage<DocumentChunk, DocumentChunk> tokenizeStage = pipeline.addStage("tokenize",
+                settings.getTokenizerThreads(), splitStage, () -> {
+                    Tokenizer tokenizer = new Tokenizer();
+                    TokenOffsets tokenOffsets = new TokenOffsets();
+                    return (chunk, output) -> {
+                        tokenize(tokenizer, tokenOffsets, tagFocusOnly ? quota.getMatcher() : null, sentenceDuplicates,
+                                 settings.isCompactTokens(), chunk);
+                        output.put(chunk);
+                    };
+                });
+
+        // penn tag each sentence (that contains a focus word)
+        Pipeline.Stage<DocumentChunk, DocumentChunk> tagStage = pipeline.addStage("tag",
+                settings.getParserThreads(), tokenizeStage, () -> new Pipeline.Processor<DocumentChunk, DocumentChunk>() {
+                    // taken from the pool when first needed (pre-parsed and cached sentences don't need one)
+                    private NLPParser parser;
+
+                    @Override
+                    public void process(DocumentChunk chunk, Pipeline.Output<DocumentChunk> output) throws Exception {
+                        if (parser == null && !chunk.isTagged() && chunk.getSentenceList().size() > 0) {
+                            parser = parserPool.take();
+                        }
+                        if (!tag(parser, chunk, tagFocusOnly ? quota.getMatcher() : null, sentenceCounter, taggedCounter)) {
+                            chunk.getSentenceList().clear(); // skip, but keep the chunk for the checkpoint
+                        }
+                        output.put(chunk);
+                    }
 
-        int lineCounter = 0;
+                    @Override
+                    public void close() {
+                        parserPool.release(parser);
+                    }
+                });
+
+        // collect the windows around the focus nouns
+        Pipeline.Stage<DocumentChunk, DocumentChunk> windowStage = pipeline.addStage("window",
+                settings.getWindowThreads(), tagStage,
+                () -> (chunk, output) -> {
+                    lineCounter.addAndGet(chunk.getSkippedSentenceCount());
+                    if (chunk.getSentenceList().size() > 0) {
+                        parseSingle(chunk, settings.getWindowSize(), vocabulary, lineCounter, map, quota.getMatcher());
+                    }
+                    output.put(chunk);
+                });
 
-        // for each file that ends in .txt
-        File folder = new File(trainingSetFileDirectory);
-        File[] listOfFiles = folder.listFiles();
-        if (listOfFiles != null) {
-            for (File file : listOfFiles) {
+        // write the windows to the unlabelled files, in file order, with regular checkpoints
+        ChunkCommitter committer = new ChunkCommitter(writer, vocabulary, quota, windowDuplicates, checkpoint,
+                settings.getCheckpointIntervalInSeconds());
+        pipeline.addStage("write", 1, windowStage,
+                () -> (chunk, output) -> committer.add(chunk));
 
-                System.out.println("found file:" + file.getAbsolutePath());
+        try {
+            pipeline.run();
+            vocabulary.save();
+            if (segmented) {
+                // all input is in the segments, a run stopped during the split only needs to split again
+                committer.commit();
+            }
+        } finally {
+            // close all open files
+            writer.close();
+            if (sentenceCache != null) {
+                sentenceCache.close();
+            }
+        }
+        if (segmented) {
+            SegmentLog.split(nnetUnlabelledDirectory, checkpoint.getFocusList(), checkpoint.getWindowCounts(),
+                             settings.getMaxOpenFiles(), settings.getMaxFileSizeInBytes(), settings.getMaxWindowsPerWord(), vocabulary, binary);
+        }
+        // complete, the next run starts over
+        checkpoint.delete();
+        SegmentLog.delete(nnetUnlabelledDirectory);
+        pipeline.printStatistics();
+        if (quota.getScanner() != null) {
+            System.out.println(String.format("text without focus words dropped: %.1f%%", quota.getScanner().getDroppedPercentage()));
+        }
+        if (sentenceCounter.get() > 0) {
+            System.out.println("sentences tagged: " + taggedCounter.get() + " of " + sentenceCounter.get());
+        }
+        if (sentenceDuplicates != null) {
+            System.out.println("duplicate documents skipped: " + documentDuplicates.get());
+            System.out.println(String.format("duplicate sentences dropped: %d of %d (%.1f%%)", sentenceDuplicates.getDuplicateCount(),
+                               sentenceDuplicates.getCheckedCount(), sentenceDuplicates.getDuplicatePercentage()));
+            System.out.println(String.format("duplicate windows dropped: %d of %d (%.1f%%)", windowDuplicates.getDuplicateCount(),
+                               windowDuplicates.getCheckedCount(), windowDuplicates.getDuplicatePercentage()));
+        }
+    }
 
-                // deal with text files
-                if (file.getAbsolutePath().endsWith(".txt")) {
 
-                    System.out.println("parsing and analysing " + file.getAbsolutePath());
-                    String textFileContent = new String(Files.readAllBytes(Paths.get(file.getAbsolutePath())));
-                    lineCounter = parseSingle(parser, file.getAbsolutePath(), textFileContent, windowSize,
-                                              openFileSet, openFileSize, nnetUnlabelledDirectory, undesirables,
-                                              maxFileSizeInBytes, lineCounter, map, focus);
+    /**
+     * read a single file of any of the supported types (.txt, .gz, .parsed) and pass it on in chunks
+     * .txt and .gz files are read from the sentence cache if it has them.
+     * A file that was (partly) processed by an earlier run continues from its checkpoint position.
+     * With deduplicate a file with the same bytes as a file read before is skipped
+     * Reading stops once the quota has all its windows
+     *
+     * @param file the file to process
+     * @param settings chunk size and decompression threads
+     * @param quota the active focus words: a matcher for the bytes of pre-parsed files, a scanner that
+     *              drops text without focus words (if set)
+     * @param cache the tagged sentence cache, or null
+     * @param checkpoint the progress of earlier runs, and the fingerprints of the files read before
+     * @param documentDuplicates counts the files skipped as copies (null: no check)
+     * @param output where to send the chunks
+     */
+    private void readFile(File file, UnlabelledSettings settings, FocusQuota quota, SentenceCache cache,
+                          Checkpoint checkpoint, AtomicLong documentDuplicates,
+                          Pipeline.Output<DocumentChunk> output) throws Exception {
+
+        String filename = file.getAbsolutePath();
+        int textChunkSize = settings.getTextChunkSize();
+        if (quota.isDone()) {
+            return; // no more windows wanted
+        }
+        System.out.println("found file:" + filename);
+
+        // processed before?
+        Checkpoint.InputProgress progress = checkpoint.getInput(filename);
+        long startPosition = 0;
+        String startSource = null;
+        if (progress != null) {
+            if (progress.isDone()) {
+                System.out.println("already processed " + filename);
+                return;
+            }
+            startPosition = progress.getPosition();
+            startSource = progress.getSource();
+            System.out.println("continuing " + filename + " from " + startSource + " position " + startPosition);
+        }
 
-                // deal with gz files
-                } else if (file.getAbsolutePath().endsWith(".gz")) {
+        // a copy of a file read before (by this run or the run it continues) has nothing new
+        if (documentDuplicates != null) {
+            String first = checkpoint.addDocument(DuplicateFilter.hash(file), filename);
+            if (first != null) {
+                System.out.println("skipping " + filename + ", a copy of " + first);
+                documentDuplicates.incrementAndGet();
+                return;
+            }
+        }
 
-                    String filename = file.getAbsolutePath();
-                    System.out.println("parsing and analysing " + filename);
-                    BufferedReader br = new BufferedReader(new InputStreamReader(
-                                                new GZIPInputStream(new FileInputStream(filename))));
-                    String content;
-                    while ((content = br.readLine()) != null) {
+        // already parsed before?  (a file started without the cache continues without it)
+        SentenceCacheWriter cacheWriter = null;
+        if (cache != null && (filename.endsWith(".txt") || filename.endsWith(".gz")) &&
+                (startPosition == 0 || SOURCE_CACHE.equals(startSource))) {
+            String cacheFilename = cache.getFilename(file);
+            try (SentenceCacheReader reader = cache.open(cacheFilename, file)) {
+                if (reader != null) {
+                    System.out.println("reading cached sentences of " + filename);
+                    readSentences(new FileChunks(filename, SOURCE_CACHE, null), reader, startPosition, quota, output);
+                    return;
+                }
+            }
+            if (startPosition == 0) {
+                cacheWriter = cache.create(cacheFilename);
+            }
+        }
+        // all the text of a file goes into the cache, the next run might look for other words
+        FocusScanner filter = (cacheWriter == null) ? quota.getScanner() : null;
+        if (startPosition > 0 && SOURCE_CACHE.equals(startSource)) {
+            throw new IOException("can't continue " + filename + ", it is no longer in the sentence cache");
+        }
 
-                        lineCounter = parseSingle(parser, filename, content, windowSize,
-                                                  openFileSet, openFileSize, nnetUnlabelledDirectory,
-                                                  undesirables, maxFileSizeInBytes, lineCounter, map, focus);
+        // set if the quota got all its windows before the end of the file
+        boolean stopped = false;
+        try {
+            // deal with text files
+            if (filename.endsWith(".txt")) {
+
+                System.out.println("parsing and analysing " + filename);
+                FileChunks chunks = new FileChunks(filename, SOURCE_TXT, cacheWriter);
+                try (TextChunkReader reader = new TextChunkReader(new FileInputStream(file), textChunkSize)) {
+                    reader.skip(startPosition);
+                    reader.setFilter(filter); // skip chunks without any focus word
+                    String textFileContent;
+                    while ((textFileContent = reader.next()) != null) {
+
+                        if (quota.isDone()) {
+                            stopped = true;
+                            break;
+                        }
+                        DocumentChunk chunk = chunks.newChunk();
+                        chunk.getTextList().add(textFileContent);
+                        chunks.put(chunk, reader.getPosition(), output);
 
                     }
+                    if (!stopped) {
+                        chunks.end(reader.getPosition(), output);
+                    }
+                }
 
-                // deal with Peter's pre-parsed files (format word1:tag word2:tag ... \n)
-                } else if (file.getAbsolutePath().endsWith(".parsed")) {
+            // deal with gz files, each line is parsed on its own (the position is the number of lines)
+            // inflated ahead of this thread (multi-member files in parallel)
+            } else if (filename.endsWith(".gz")) {
+
+                System.out.println("parsing and analysing " + filename);
+                FileChunks chunks = new FileChunks(filename, SOURCE_GZ, cacheWriter);
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                                            new ParallelGzipInputStream(filename, settings.getGzipThreads(),
+                                                                         settings.getGzipLookAheadInBytes())))) {
+                    long lineCount = 0;
+                    while (lineCount < startPosition && br.readLine() != null) {
+                        lineCount = lineCount + 1;
+                    }
 
-                    String filename = file.getAbsolutePath();
-                    System.out.println("parsing and analysing " + filename);
-                    BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(filename)));
+                    DocumentChunk chunk = chunks.newChunk();
+                    int size = 0;
                     String content;
                     while ((content = br.readLine()) != null) {
 
-                        List<Sentence> sentenceList = parser.parsePeterParsedText(content);
-                        lineCounter = parseSingle(parser, filename, sentenceList, windowSize,
-                                openFileSet, openFileSize, nnetUnlabelledDirectory,
-                                undesirables, maxFileSizeInBytes, lineCounter, map, focus);
+                        lineCount = lineCount + 1;
+                        if (filter != null) {
+                            // each line is split into sentences on its own, a line without focus words can go
+                            boolean keep = filter.find(content);
+                            filter.count(content.length(), !keep);
+                            if (!keep) {
+                                continue;
+                            }
+                        }
+                        chunk.getTextList().add(content);
+                        size = size + content.length();
+                        if (size >= textChunkSize) {
+                            chunks.put(chunk, lineCount, output);
+                            chunk = chunks.newChunk();
+                            size = 0;
+                            if (quota.isDone()) {
+                                stopped = true;
+                                break;
+                            }
+                        }
 
                     }
+                    if (!stopped) {
+                        if (chunk.getTextList().size() > 0) {
+                            chunks.put(chunk, lineCount, output);
+                        }
+                        chunks.end(lineCount, output);
+                    }
                 }
 
+            // deal with Peter's pre-parsed files (format word1:tag word2:tag ... \n)
+            } else if (filename.endsWith(".parsed")) {
 
-            } // for each file found
+                System.out.println("parsing and analysing " + filename);
+                // only lines with a focus noun in them are turned into sentences
+                try (ParsedFileReader reader = new ParsedFileReader(filename, quota.getMatcher())) {
+                    stopped = !readSentences(new FileChunks(filename, SOURCE_PARSED, null), reader, startPosition, quota, output);
+                }
+            }
 
-        } // if list of files != null
+        } catch (Exception ex) {
+            if (cacheWriter != null) {
+                cacheWriter.abandon();
+            }
+            throw ex;
+        }
+        if (cacheWriter != null) {
+            if (stopped) {
+                cacheWriter.abandon(); // incomplete, don't cache this file
+            } else {
+                cacheWriter.readDone();
+            }
+        }
+    }
+
+
+    /**
+     * pass on already tagged sentences in batches
+     * @param chunks the chunks of the file the sentences are from
+     * @param reader the tagged sentences
+     * @param startPosition the position to continue reading from (0: from the start)
+     * @param quota stop reading once it has all its windows
+     * @param output where to send the chunks
+     * @return false if reading stopped before the end of the file
+     */
+    private boolean readSentences(FileChunks chunks, SentenceReader reader, long startPosition, FocusQuota quota,
+                                  Pipeline.Output<DocumentChunk> output) throws IOException, InterruptedException {
+        if (startPosition > 0) {
+            reader.skip(startPosition);
+        }
+        DocumentChunk chunk = chunks.newChunk();
+        chunk.setTagged(true);
+        Sentence sentence;
+        while ((sentence = reader.next()) != null) {
+
+            chunk.getSentenceList().add(sentence);
+            if (chunk.getSentenceList().size() >= PARSED_BATCH_SIZE) {
+                chunks.put(chunk, reader.getPosition(), output);
+                chunk = chunks.newChunk();
+                chunk.setTagged(true);
+                if (quota.isDone()) {
+                    return false;
+                }
+            }
 
-        // close all open files
-        for ( PrintWriter writer : openFileSet.values() ) {
-            writer.close();
         }
+        if (chunk.getSentenceList().size() > 0) {
+            chunks.put(chunk, reader.getPosition(), output);
+        }
+        chunks.end(reader.getPosition(), output);
+        return true;
     }
 
 
     /**
-     * parse a single block of text and process it according to our needs for ambiguous entities
+     * sentence boundary detection of each text of a chunk
      *
-     * @param parser the text parser to use
-     * @param filename the name of the file for info purposes
-     * @param textFileContent the text to process
-     * @param windowSize the window size around text for finding match words
-     * @param openFileSet the set of files open for writing data to for training
-     * @param openFileSize the size of the files open for writing as a cutoff
-     * @param nnetUnlabelledDirectory the directory to create files in for training
-     * @param undesirables undesirables detection class
-     * @param maxFileSizeInBytes max file size for collecting data
-     * @param lineCounter a counter for tracking where we are (updated)
-     * @param map storage for the ambiguous entities to look for
-     * @param focus an exclusion set
-     * @return the updated lineCounter
+     * @param parser the parser of the calling thread
+     * @param chunk the chunk to process
      */
-    private int parseSingle(NLPParser parser, String filename, String textFileContent,
-                            int windowSize, Map<String, PrintWriter> openFileSet, Map<String, Long> openFileSize,
-                            String nnetUnlabelledDirectory, Undesirables undesirables,
-                            long maxFileSizeInBytes, int lineCounter,
-                            Map<String, WordnetAmbiguousSet> map, Set<String> focus) {
-        try {
-            List<Sentence> sentenceList = parser.parse(textFileContent);
-            if (sentenceList == null) {
-                System.out.println("empty: " + filename);
-                return lineCounter;
+    private void splitSentences(NLPParser parser, DocumentChunk chunk) {
+        for (String text : chunk.getTextList()) {
+            if (text != null && text.length() > 0) {
+                String[] sentenceList = parser.getSentences(text);
+                if (sentenceList != null) {
+                    chunk.getSentenceTextList().addAll(Arrays.asList(sentenceList));
+                }
             }
+        }
+        chunk.getTextList().clear();
+    }
 
-            return parseSingle(parser, filename, sentenceList, windowSize, openFileSet, openFileSize,
-                               nnetUnlabelledDirectory, undesirables, maxFileSizeInBytes, lineCounter, map, focus);
 
-        } catch(Exception ex){
-            System.out.println("error parsing file:" + ex.toString());
+    /**
+     * tokenize each sentence of a chunk
+     * the tokens are offsets into the sentence until they are known to be needed, a sentence
+     * without any focus word can never make a window and is dropped without creating its Tokens.
+     * A repeat of an earlier sentence can only repeat its windows, it is dropped before tagging
+     *
+     * @param tokenizer the tokenizer to use
+     * @param tokenOffsets the tokens of a sentence (re-used)
+     * @param focus only keep the sentences with a focus word (all sentences if null)
+     * @param duplicates the sentences seen before (null: keep repeated sentences)
+     * @param compact leave out the white-space tokens
+     * @param chunk the chunk to process
+     */
+    private void tokenize(Tokenizer tokenizer, TokenOffsets tokenOffsets, FocusMatcher focus, DuplicateFilter duplicates,
+                          boolean compact, DocumentChunk chunk) {
+        // all sentences are kept for the cache, the next run might look for other words
+        if (chunk.getCacheWriter() != null) {
+            focus = null;
+            duplicates = null;
         }
-        return lineCounter;
+        int skipped = 0;
+        for (String text_sentence : chunk.getSentenceTextList()) {
+            tokenizer.tokenize(text_sentence, tokenOffsets);
+            if (tokenOffsets.size() > 0) {
+                if ((focus == null || tokenOffsets.hasFocusWord(focus)) &&
+                        (duplicates == null || duplicates.add(DuplicateFilter.hash(text_sentence)))) {
+                    chunk.getSentenceList().add(tokenOffsets.toSentence(compact));
+                } else {
+                    skipped = skipped + 1;
+                }
+            }
+        }
+        chunk.setSkippedSentenceCount(skipped);
+        chunk.getSentenceTextList().clear();
+    }
+
+
+    /**
+     * penn tag each sentence of a chunk (unless it came from a pre-parsed file or the cache)
+     * and add the tagged sentences to the cache
+     * a window is only made for a focus word that is a noun, so a sentence without any
+     * focus word doesn't need its tags and can skip the (expensive) pos tagger
+     *
+     * @param parser the parser of the calling thread
+     * @param chunk the chunk to process
+     * @param focus only tag sentences with one of these words in them (all sentences if null)
+     * @param sentenceCounter the number of sentences seen (updated)
+     * @param taggedCounter the number of sentences tagged (updated)
+     * @return false if the tagger failed and the chunk should be dropped
+     */
+    private boolean tag(NLPParser parser, DocumentChunk chunk, FocusMatcher focus,
+                        AtomicLong sentenceCounter, AtomicLong taggedCounter) {
+        if (!chunk.isTagged()) {
+            SentenceCacheWriter cacheWriter = chunk.getCacheWriter();
+            try {
+                int numTagged = 0;
+                for (Sentence sentence : chunk.getSentenceList()) {
+                    // cached sentences are all tagged, the next run might look for other words
+                    if (focus == null || cacheWriter != null || sentence.hasFocusWord(focus)) {
+                        parser.setupTags(sentence); // use the open-nlp pos tagger to set the penn tags
+                        numTagged = numTagged + 1;
+                    }
+                }
+                chunk.setTagged(true);
+                sentenceCounter.addAndGet(chunk.getSentenceList().size() + chunk.getSkippedSentenceCount());
+                taggedCounter.addAndGet(numTagged);
+            } catch (Exception ex) {
+                System.out.println("error parsing file:" + ex.toString());
+                if (cacheWriter != null) {
+                    cacheWriter.abandon(); // incomplete, don't cache this file
+                }
+                return false;
+            }
+            if (cacheWriter != null) {
+                try {
+                    cacheWriter.write(chunk.getSequence(), chunk.getSentenceList());
+                } catch (IOException ex) {
+                    System.out.println("error writing sentence cache:" + ex.toString());
+                }
+            }
+        }
+        return true;
     }
 
 
     /**
-     * parse a single block of text and process it according to our needs for ambiguous entities
+     * find the ambiguous entities in the sentences of a chunk and collect the windows around them
      *
-     * @param parser the text parser to use
-     * @param filename the name of the file for info purposes
-     * @param sentenceList the parsed document contents
+     * @param chunk the tagged chunk, the windows are added to it
      * @param windowSize the window size around text for finding match words
-     * @param openFileSet the set of files open for writing data to for training
-     * @param openFileSize the size of the files open for writing as a cutoff
-     * @param nnetUnlabelledDirectory the directory to create files in for training
-     * @param undesirables undesirables detection class
-     * @param maxFileSizeInBytes max file size for collecting data
+     * @param vocabulary the ids of the words (and which ones are undesirable)
      * @param lineCounter a counter for tracking where we are (updated)
      * @param map storage for the ambiguous entities to look for
      * @param focus an exclusion set
-     * @return the updated lineCounter
      */
-    private int parseSingle(NLPParser parser, String filename, List<Sentence> sentenceList,
-                             int windowSize, Map<String, PrintWriter> openFileSet, Map<String, Long> openFileSize,
-                             String nnetUnlabelledDirectory, Undesirables undesirables,
-                             long maxFileSizeInBytes, int lineCounter,
-                             Map<String, WordnetAmbiguousSet> map, Set<String> focus) {
+    void parseSingle(DocumentChunk chunk, int windowSize, Vocabulary vocabulary,
+                     AtomicInteger lineCounter, Map<String, WordnetAmbiguousSet> map, FocusMatcher focus) {
 
+        String filename = chunk.getFilename();
+        List<Sentence> sentenceList = chunk.getSentenceList();
         int minValidSize = (windowSize / 2); // min number of items needed for a valid training set
 
         try {
             if (sentenceList == null || sentenceList.size() == 0) {
-                System.out.println("empty: " + filename);
-                return lineCounter;
+                logger.debug("empty: " + filename);
+                return;
             }
 
-            System.out.println("sentences: " + sentenceList.size() + ", for " + filename);
+            // once per chunk, from several window threads at the same time
+            logger.debug("sentences: " + sentenceList.size() + ", for " + filename);
 
             for (Sentence sentence : sentenceList ) {
 
                 // for each token
-                List<Token> tokenList = sentence.getTokenList();
-                int size = tokenList.size();
+                int size = sentence.size();
+                int fullSize = sentence.getFullSize();
+                char[] chars = sentence.getChars();
 
                 for (int i = 0; i < size; i++) {
 
                     // is this token / word one of the ambiguous words from Peter's lexicon?
-                    Token token = tokenList.get(i);
-                    String part = token.getText();
-                    String tag = token.getTag();
-                    if (focus.contains(part.toLowerCase()) && tag.startsWith("NN")) {
+                    // only read the tag of a focus word, the other sentences may not have been tagged
+                    if (focus.contains(chars, sentence.getStart(i), sentence.getEnd(i)) && sentence.getTag(i).isNoun()) {
                         // get the set
+                        String part = sentence.getText(i);
                         WordnetAmbiguousSet set = map.get(part.toLowerCase());
 
                         // construct a window left and right of the word
-                        int left = i - windowSize;
-                        if (left < 0) left = 0;
+                        // (in positions of the full token stream, a compact sentence has no white-space tokens)
+                        int position = sentence.getPosition(i);
+                        int leftPosition = position - windowSize;
+                        if (leftPosition < 0) leftPosition = 0;
+                        int left = i;
+                        while (left > 0 && sentence.getPosition(left - 1) >= leftPosition) {
+                            left--;
+                        }
                         for (int j = left; j < i; j++) {
-                            String punc = tokenList.get(j).getText();
-                            if (punc.equals(".")) {
+                            if (sentence.isChar(j, '.')) {
                                 left = j + 1;
+                                leftPosition = sentence.getPosition(j) + 1;
                             }
                         }
-                        int right = i + windowSize;
-                        if (right + 1 >= size) {
-                            right = size - 1;
+                        int rightPosition = position + windowSize;
+                        if (rightPosition + 1 >= fullSize) {
+                            rightPosition = fullSize - 1;
+                        }
+                        int right = i;
+                        while (right + 1 < size && sentence.getPosition(right + 1) <= rightPosition) {
+                            right++;
                         }
 
                         // 1.5 window size at least
-                        if (Math.abs(left - right) >= minValidSize) {
+                        if (Math.abs(leftPosition - rightPosition) >= minValidSize) {
 
                             // get the singular version
                             String wordStr = part.toLowerCase();
@@ -273,40 +692,26 @@ public class GenerateUnlabelled {
                             if (plural != null && plural.equals(wordStr)) {
                                 wordStr = set.getWord();
                             }
-                            Long fileSize = openFileSize.get(wordStr);
-                            PrintWriter writer = openFileSet.get(wordStr);
-                            if (writer == null) {
-                                writer = new PrintWriter(outputFilename(nnetUnlabelledDirectory, wordStr));
-                                openFileSet.put(wordStr, writer);
-                                fileSize = 0L;
-                                openFileSize.put(wordStr, fileSize);
-                            }
 
                             // a hit for each syn is counted, we don't want any crossovers between synsets
                             int count = 0;
-                            StringBuilder sb = new StringBuilder();
+                            int[] window = new int[right - left + 1];
                             int j;
                             for (j = left; j <= right; j++) {
-                                token = tokenList.get(j);
-                                if (token.isText()) {
-                                    String part_j = token.getText().toLowerCase();
-                                    if (!undesirables.isUndesirable(part_j)) {
+                                if (sentence.isText(j)) {
+                                    String part_j = sentence.getText(j).toLowerCase();
+                                    int id = vocabulary.getId(part_j);
+                                    if (!vocabulary.isUndesirable(id)) {
+                                        window[count] = id;
                                         count = count + 1;
-                                        if (sb.length() > 0) {
-                                            sb.append(",");
-                                        }
-                                        sb.append(part_j);
                                     } // if not undesirable
-                                } else if (token.getText().equals(".")) {
+                                } else if (sentence.isChar(j, '.')) {
                                     break; // stop collecting at end of sentence events
                                 }
                             }
                             // a valid piece of text to collect?
-                            if (count >= minValidSize && (maxFileSizeInBytes <= 0 || fileSize < maxFileSizeInBytes)) {
-                                sb.append("\n");
-                                writer.write(sb.toString());
-                                fileSize = fileSize + sb.length();
-                                openFileSize.put(wordStr, fileSize);
+                            if (count >= minValidSize) {
+                                chunk.addWindow(wordStr, Arrays.copyOf(window, count));
                             }
 
                         } // if window size big enough
@@ -315,11 +720,10 @@ public class GenerateUnlabelled {
 
                 } // for each word
 
-                lineCounter = lineCounter + 1;
-
                 // display periodic progress
-                if (lineCounter % 100_000 == 0) {
-                    System.out.println("   lines processed: " + lineCounter);
+                int lineCount = lineCounter.incrementAndGet();
+                if (lineCount % 100_000 == 0) {
+                    System.out.println("   lines processed: " + lineCount);
                 } // if lineCounter hit
 
             }
@@ -327,21 +731,52 @@ public class GenerateUnlabelled {
         } catch(Exception ex){
             System.out.println("error parsing file:" + ex.toString());
         }
-        return lineCounter;
     }
 
 
+
     /**
-     * create an unlabelled filename for the given word
-     *
-     * @param nnetUnlabelledDirectory the directory we start with
-     * @param word the word we're using
-     * @return the combined name for writing to
+     * creates the chunks of a single file: numbers them in file order and
+     * sets the position in the file after each chunk (for the checkpoint)
      */
-    private String outputFilename( String nnetUnlabelledDirectory, String word ) {
-        return nnetUnlabelledDirectory + word + "-trainingset.csv";
-    }
+    private static class FileChunks {
 
-}
+        private String filename;
+        private String source;
+        private SentenceCacheWriter cacheWriter;
+        private int sequence;
+
+        private FileChunks(String filename, String source, SentenceCacheWriter cacheWriter) {
+            this.filename = filename;
+            this.source = source;
+            this.cacheWriter = cacheWriter;
+        }
 
+        // a new chunk of this file, its sentences go to the cache (if set)
+        private DocumentChunk newChunk() {
+            DocumentChunk chunk = new DocumentChunk(filename);
+            chunk.setCacheWriter(cacheWriter);
+            return chunk;
+        }
+
+        // send a chunk to the next stage
+        private void put(DocumentChunk chunk, long position, Pipeline.Output<DocumentChunk> output) throws InterruptedException {
+            chunk.setSequence(sequence);
+            chunk.setSource(source);
+            chunk.setPosition(position);
+            sequence = sequence + 1;
+            if (chunk.getCacheWriter() != null) {
+                chunk.getCacheWriter().addChunk(); // the cache file waits for this chunk
+            }
+            output.put(chunk);
+        }
 
+        // send the (empty) last chunk, the file is done once it has been written
+        private void end(long position, Pipeline.Output<DocumentChunk> output) throws InterruptedException {
+            DocumentChunk chunk = new DocumentChunk(filename);
+            chunk.setEndOfFile(true);
+            put(chunk, position, output);
+        }
+    }
+
+}
@@ -58,18 +58,10 @@ public class Main {
 
         System.out.println("parameters from wsd.properties");
 
-        // surrounding words window size
-        int windowSize = Integer.parseInt(settings.getValueByKey("windowSize"));
-        System.out.println("windowSize=" + windowSize);
-
         // number of items to return for top frequency matches (i.e. top x relations to the noun)
         int collectorCount = Integer.parseInt(settings.getValueByKey("collectorCount"));
         System.out.println("collectorCount=" + collectorCount);
 
-        // limit unlabelled files if > 0 to this many bytes
-        long maxFileSizeInBytes = Long.parseLong(settings.getValueByKey("maxFileSizeInBytes"));
-        System.out.println("maxFileSizeInBytes=" + maxFileSizeInBytes);
-
         // percentage at which labelled sets get split into good and bad to see how well the semantic cloud works for each noun
         double failThreshold = Double.parseDouble(settings.getValueByKey("failThreshold"));
         System.out.println("failThreshold=" + failThreshold);
@@ -78,14 +70,30 @@ public class Main {
         int minUnlabelledDataRequired = Integer.parseInt(settings.getValueByKey("minUnlabelledDataRequired"));
         System.out.println("minUnlabelledDataRequired=" + minUnlabelledDataRequired);
 
+        // the number of words step 2 labels at the same time (0: one per processor)
+        int labelledThreads = Integer.parseInt(settings.getValueByKey("labelledThreads", "0"));
+        System.out.println("labelledThreads=" + labelledThreads);
+
+        // the memory the windows of the words labelled at the same time can take (0: half the heap)
+        long labelledMemoryInBytes = Long.parseLong(settings.getValueByKey("labelledMemoryInBytes", "0"));
+        System.out.println("labelledMemoryInBytes=" + labelledMemoryInBytes);
+
+        // the number of windows of a word step 2 scans as one chunk, larger words are split over the threads too
+        int labelledChunkSize = Integer.parseInt(settings.getValueByKey("labelledChunkSize", "262144"));
+        System.out.println("labelledChunkSize=" + labelledChunkSize);
+
+        // window size, file limits and the threads of each stage of step 1
+        UnlabelledSettings unlabelledSettings = new UnlabelledSettings(settings);
+
         // step 1.  turn unlabelled data into labelled sets
         // parse the text files, look for nouns that are in the lexicon (see data/lexicon)
         // and start collecting related data
         GenerateUnlabelled step1 = new GenerateUnlabelled();
-        step1.create(dataPath, trainingSetFileFolder, outputDirectoryBase, maxFileSizeInBytes, windowSize);
+        step1.create(dataPath, trainingSetFileFolder, outputDirectoryBase, unlabelledSettings);
 
         GenerateLabelled step2 = new GenerateLabelled();
-        step2.create(dataPath, outputDirectoryBase, failThreshold, collectorCount, minUnlabelledDataRequired);
+        step2.create(dataPath, outputDirectoryBase, failThreshold, collectorCount, minUnlabelledDataRequired,
+                     labelledThreads, labelledMemoryInBytes, labelledChunkSize);
     }
 
 
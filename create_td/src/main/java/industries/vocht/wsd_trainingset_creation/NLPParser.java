@@ -11,8 +11,8 @@ import org.slf4j.LoggerFactory;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Simple OpenNLP wrapper for sentence boundary detection and POS tagging
@@ -23,6 +23,13 @@ public class NLPParser {
 
     private static Logger logger = LoggerFactory.getLogger(NLPParser.class);
 
+    // a short text for warming up a new parser
+    private static final String WARM_UP_TEXT = "The bank approved the loan on Monday. She sat on the bank of the river.";
+
+    // the models already loaded by this process, by data directory (read-only, shared by all parsers)
+    private static final Map<String, SentenceModel> sentenceModelMap = new HashMap<>();
+    private static final Map<String, POSModel> posModelMap = new HashMap<>();
+
     // open-nlp penn-tree tagger
     private POSTaggerME posTagger = null;
 
@@ -39,55 +46,15 @@ public class NLPParser {
     }
 
     /**
-     * sentence split and tokenize a block of text
+     * create a parser from already loaded models - the models are read-only and can be shared
+     * between parsers, but the parser itself (the ME classes) is not thread safe
      *
-     * @param text the text to process
-     * @return a list of sentences
+     * @param sentenceModel the open-nlp sentence boundary model
+     * @param posModel the open-nlp penn-tag model
      */
-    public List<Sentence> parse(String text) throws Exception {
-        List<Sentence> resultList = new ArrayList<>();
-        if ( text != null && text.length() > 0 ) {
-            Tokenizer tokenizer = new Tokenizer();
-
-            String[] sentenceList = getSentences(text); // sentence boundary detection
-            if (sentenceList != null) {
-                // for each "text" sentence
-                for (String text_sentence : sentenceList) {
-
-                    // perform a syntactic parse
-                    List<Token> words = tokenizer.tokenize(text_sentence);
-                    setupTags(words); // use the open-nlp pos tagger to set the penn tags
-
-                    resultList.add(new Sentence(words));
-                }
-            }
-        }
-        return resultList;
-    }
-
-    /**
-     * process a pre-parsed .parser file
-     *
-     * @param text the text to process
-     * @return a list of sentences
-     */
-    public List<Sentence> parsePeterParsedText(String text) throws Exception {
-        List<Sentence> resultList = new ArrayList<>();
-        if ( text != null && text.length() > 0 ) {
-
-            String[] parts = text.split(" ");
-            List<Token> tokenList = new ArrayList<>();
-            for (String part : parts) {
-                String[] wordParts = part.split(":");
-                if (wordParts.length == 2) {
-                    tokenList.add(new Token(wordParts[0], wordParts[1]));
-                }
-            }
-            if (tokenList.size() > 0) {
-                resultList.add(new Sentence(tokenList));
-            }
-        }
-        return resultList;
+    public NLPParser(SentenceModel sentenceModel, POSModel posModel) {
+        this.sentenceDetector = new SentenceDetectorME(sentenceModel);
+        this.posTagger = new POSTaggerME(posModel);
     }
 
     /**
@@ -95,7 +62,7 @@ public class NLPParser {
      * @param text the text to perform detection on
      * @return a list of sentence strings
      */
-    private String[] getSentences(String text) {
+    public String[] getSentences(String text) {
         return sentenceDetector.sentDetect(text);
     }
 
@@ -109,19 +76,19 @@ public class NLPParser {
     }
 
     /**
-     * setup the tags on a token list using open nlp
-     * @param tokenList the tokenList to add penn tags to
+     * setup the tags of a sentence using open nlp
+     * @param sentence the sentence to add penn tags to
      */
-    private void setupTags(List<Token> tokenList) throws Exception {
-        if (tokenList != null && tokenList.size() > 0) {
-            String[] words = new String[tokenList.size()];
-            for (int i = 0; i < tokenList.size(); i++ ) {
-                words[i] = tokenList.get(i).getText();
+    public void setupTags(Sentence sentence) throws Exception {
+        if (sentence != null && sentence.size() > 0) {
+            String[] words = new String[sentence.size()];
+            for (int i = 0; i < sentence.size(); i++ ) {
+                words[i] = sentence.getText(i);
             }
             String[] tags = getTags(words);
-            if (tags != null && tags.length == tokenList.size()) {
-                for (int i = 0; i < tokenList.size(); i++ ) {
-                    tokenList.get(i).setTag(tags[i]);
+            if (tags != null && tags.length == sentence.size()) {
+                for (int i = 0; i < sentence.size(); i++ ) {
+                    sentence.setTag(i, PennTag.fromTag(tags[i]));
                 }
             } else {
                 throw new Exception("invalid return from open-nlp tagger");
@@ -137,47 +104,86 @@ public class NLPParser {
 
         logger.info("NLPParser: setup from (" + dataDirectory + ")");
 
-        {
-            {
-                InputStream modelIn = null;
-                try {
-                    logger.debug("NLPParser: sentence detected = en-sent.bin");
-                    // Loading sentence detection model
-                    modelIn = new FileInputStream(dataDirectory + "/opennlp/models-1.5/en-sent.bin");
-                    final SentenceModel sentenceModel = new SentenceModel(modelIn);
-                    modelIn.close();
-
-                    // create the booktrack maximum entropy sentence scanner
-                    sentenceDetector = new SentenceDetectorME(sentenceModel);
-
-                } finally {
-                    if (modelIn != null) {
-                        modelIn.close();
-                    }
-                }
-            }
-
+        // create the booktrack maximum entropy sentence scanner
+        sentenceDetector = new SentenceDetectorME(getSentenceModel(dataDirectory));
 
-            InputStream modelIn = null;
-            try {
-                logger.debug("NLPParser: pos-tagger = en-pos-maxent.bin");
-                // Loading tokenizer model
-                modelIn = new FileInputStream(dataDirectory + "/opennlp/models-1.5/en-pos-maxent.bin");
-                final POSModel posModel = new POSModel(modelIn);
-                modelIn.close();
+        posTagger = new POSTaggerME(getPOSModel(dataDirectory));
+    }
 
-                posTagger = new POSTaggerME(posModel);
+    /**
+     * run a short text through the sentence detector, the tokenizer and the tagger the same way
+     * the step 1 pipeline does, so that the first real text doesn't pay for any lazy initialisation
+     * @throws Exception tagger error
+     */
+    public void warmUp() throws Exception {
+        Tokenizer tokenizer = new Tokenizer();
+        TokenOffsets tokenOffsets = new TokenOffsets();
+        for (String sentence : getSentences(WARM_UP_TEXT)) {
+            tokenizer.tokenize(sentence, tokenOffsets);
+            setupTags(tokenOffsets.toSentence(false));
+        }
+    }
 
-            } finally {
-                if (modelIn != null) {
-                    modelIn.close();
-                }
+    /**
+     * the sentence boundary detection model, loaded only once by this process
+     * @param dataDirectory the data directory containing opennlp/models-1.5
+     * @return the model
+     * @throws IOException files incorrect/missing
+     */
+    public static SentenceModel getSentenceModel(String dataDirectory) throws IOException {
+        synchronized (sentenceModelMap) {
+            SentenceModel model = sentenceModelMap.get(dataDirectory);
+            if (model == null) {
+                model = loadSentenceModel(dataDirectory);
+                sentenceModelMap.put(dataDirectory, model);
             }
+            return model;
         }
+    }
 
+    /**
+     * the penn-tag model, loaded only once by this process
+     * @param dataDirectory the data directory containing opennlp/models-1.5
+     * @return the model
+     * @throws IOException files incorrect/missing
+     */
+    public static POSModel getPOSModel(String dataDirectory) throws IOException {
+        synchronized (posModelMap) {
+            POSModel model = posModelMap.get(dataDirectory);
+            if (model == null) {
+                model = loadPOSModel(dataDirectory);
+                posModelMap.put(dataDirectory, model);
+            }
+            return model;
+        }
     }
 
+    /**
+     * load the open-nlp sentence boundary detection model
+     * @param dataDirectory the data directory containing opennlp/models-1.5
+     * @return the model
+     * @throws IOException files incorrect/missing
+     */
+    public static SentenceModel loadSentenceModel(String dataDirectory) throws IOException {
+        logger.debug("NLPParser: sentence detected = en-sent.bin");
+        // Loading sentence detection model
+        try (InputStream modelIn = new FileInputStream(dataDirectory + "/opennlp/models-1.5/en-sent.bin")) {
+            return new SentenceModel(modelIn);
+        }
+    }
 
+    /**
+     * load the open-nlp penn-tag model
+     * @param dataDirectory the data directory containing opennlp/models-1.5
+     * @return the model
+     * @throws IOException files incorrect/missing
+     */
+    public static POSModel loadPOSModel(String dataDirectory) throws IOException {
+        logger.debug("NLPParser: pos-tagger = en-pos-maxent.bin");
+        // Loading tokenizer model
+        try (InputStream modelIn = new FileInputStream(dataDirectory + "/opennlp/models-1.5/en-pos-maxent.bin")) {
+            return new POSModel(modelIn);
+        }
+    }
 
 }
-
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.sentdetect.SentenceModel;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * a fixed size pool of NLPParsers, one for each worker thread.  The open-nlp
+ * models are loaded once and shared, the parsers themselves are not thread safe
+ * and must only be used by one thread at a time (take / release)
+ *
+ * the two models are loaded in parallel on background threads and every parser is
+ * warmed up before it goes into the pool, take() waits until they are ready.
+ * A run that never needs a parser (all its sentences cached or pre-parsed) doesn't wait at all
+ *
+ */
+public class NLPParserPool {
+
+    // the parsers not currently in use
+    private BlockingQueue<NLPParser> pool;
+
+    // the total number of parsers in this pool
+    private int size;
+
+    // completes once all parsers are in the pool (or loading failed)
+    private CompletableFuture<Void> ready;
+
+    // time taken to load the models, and to have all parsers ready
+    private long modelLoadTimeInMs;
+    private long readyTimeInMs;
+
+    /**
+     * create a pool of parsers, the parsers are created in the background
+     * @param dataDirectory the data directory containing opennlp/models-1.5
+     * @param size the number of parsers to create (one per thread)
+     */
+    public NLPParserPool(String dataDirectory, int size) {
+        if ( size < 1 ) {
+            size = 1;
+        }
+        this.size = size;
+        this.pool = new ArrayBlockingQueue<>(size);
+        this.ready = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> load(dataDirectory), "nlp-model-loader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * load the models (at the same time) and fill the pool with warmed up parsers
+     * @param dataDirectory the data directory containing opennlp/models-1.5
+     */
+    private void load(String dataDirectory) {
+        try {
+            long start = System.nanoTime();
+
+            FutureTask<POSModel> posModelTask = new FutureTask<>(() -> NLPParser.getPOSModel(dataDirectory));
+            Thread posThread = new Thread(posModelTask, "nlp-pos-model-loader");
+            posThread.setDaemon(true);
+            posThread.start();
+            SentenceModel sentenceModel = NLPParser.getSentenceModel(dataDirectory);
+            POSModel posModel = posModelTask.get();
+            modelLoadTimeInMs = (System.nanoTime() - start) / 1_000_000;
+
+            for ( int i = 0; i < size; i++ ) {
+                NLPParser parser = new NLPParser(sentenceModel, posModel);
+                parser.warmUp();
+                pool.add(parser);
+            }
+            readyTimeInMs = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("open-nlp models loaded in " + modelLoadTimeInMs + " ms, " + size +
+                               " parsers ready in " + readyTimeInMs + " ms");
+            ready.complete(null);
+
+        } catch (Throwable ex) {
+            ready.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * get a parser for exclusive use, wait for one if none are available
+     * @return a parser, must be returned using release()
+     * @throws IOException the models couldn't be loaded
+     */
+    public NLPParser take() throws InterruptedException, IOException {
+        try {
+            ready.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("loading the open-nlp models failed", ex.getCause());
+        }
+        return pool.take();
+    }
+
+    /**
+     * return a parser to the pool after use
+     * @param parser the parser obtained using take()
+     */
+    public void release(NLPParser parser) {
+        if ( parser != null ) {
+            pool.offer(parser);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getModelLoadTimeInMs() {
+        return modelLoadTimeInMs;
+    }
+
+    public long getReadyTimeInMs() {
+        return readyTimeInMs;
+    }
+
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * a gzip input stream that decompresses ahead of its reader on its own thread(s).
+ *
+ * files made by concatenating gzip files have several members, each member is inflated
+ * on a thread pool in parallel and handed to the reader in file order.  Possible member
+ * starts are found by looking for gzip headers, a member is only used if it starts exactly
+ * where the previous one ended and its crc and size check out.  The members inflated ahead of the
+ * reader are kept within a byte budget.  Single member files (or members that are too large for the
+ * budget) are inflated by a single read-ahead thread into large buffers.
+ *
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+    // size of the blocks handed to the reader by the read-ahead thread
+    private static final int BUFFER_SIZE = 4 * 1024 * 1024;
+
+    // number of blocks that can wait for the reader
+    private static final int QUEUE_SIZE = 4;
+
+    // members larger than this are not inflated in parallel, they're streamed
+    private static final int MAX_MEMBER_SIZE = 64 * 1024 * 1024;
+
+    // the default budget of inflated data held ahead of the reader by the parallel inflaters
+    public static final long DEFAULT_LOOK_AHEAD_SIZE = 256L * 1024 * 1024;
+
+    // size of the reads from the compressed file
+    private static final int READ_SIZE = 64 * 1024;
+
+    // end of data marker
+    private static final byte[] END = new byte[0];
+
+    private String filename;
+    private int numThreads;
+
+    // the largest member inflated in parallel, and the number of members inflated ahead of the reader
+    // (together never more than the look-ahead budget)
+    private int maxMemberSize;
+    private int lookAhead;
+
+    // blocks of inflated data ready for the reader
+    private BlockingQueue<byte[]> queue;
+
+    // the block being read and the position inside it
+    private byte[] current;
+    private int position;
+
+    // the thread that fills the queue, and the first error it had
+    private Thread producer;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    /**
+     * open a gzip file
+     * @param filename the file to read
+     * @param numThreads the number of members inflated in parallel, 1 for a single read-ahead thread only
+     */
+    public ParallelGzipInputStream(String filename, int numThreads) {
+        this(filename, numThreads, DEFAULT_LOOK_AHEAD_SIZE);
+    }
+
+    /**
+     * open a gzip file
+     * @param filename the file to read
+     * @param numThreads the number of members inflated in parallel, 1 for a single read-ahead thread only
+     * @param lookAheadSize the bytes of inflated members that can be held ahead of the reader
+     */
+    public ParallelGzipInputStream(String filename, int numThreads, long lookAheadSize) {
+        this.filename = filename;
+        this.numThreads = Math.max(numThreads, 1);
+        this.maxMemberSize = (int)Math.max(READ_SIZE * 4, Math.min(MAX_MEMBER_SIZE, lookAheadSize / this.numThreads));
+        this.lookAhead = (int)Math.max(1, Math.min(this.numThreads * 2, lookAheadSize / maxMemberSize));
+        this.queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        this.producer = new Thread(this::produce, "gzip-" + Paths.get(filename).getFileName());
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int size = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, size);
+        position = position + size;
+        return size;
+    }
+
+    /**
+     * make sure there is data in current
+     * @return false at the end of the data
+     */
+    private boolean nextBlock() throws IOException {
+        while (current != END && (current == null || position >= current.length)) {
+            try {
+                current = queue.take();
+                position = 0;
+            } catch (InterruptedException ex) {
+                throw new IOException("interrupted reading " + filename);
+            }
+        }
+        if (current == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        producer.interrupt();
+    }
+
+    /**
+     * the read-ahead thread: fill the queue with the inflated data of the whole file
+     */
+    private void produce() {
+        ExecutorService executor = null;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long offset = 0;
+            if (numThreads > 1) {
+                executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "gzip-inflate");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                offset = inflateParallel(channel, fileSize, executor);
+            }
+            // anything after the last member that isn't a gzip header is ignored, as GZIPInputStream does
+            if (offset == 0 || (offset < fileSize && startsWithHeader(channel, offset))) {
+                inflateSequential(channel, offset);
+            }
+        } catch (InterruptedException ex) {
+            // closed by the reader
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (Exception ex) {
+            failure = new IOException(ex);
+        } finally {
+            if (executor != null) {
+                executor.shutdown(); // the members still being inflated finish on their own
+            }
+            if (!closed) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException ex) {
+                    // closed by the reader
+                }
+            }
+        }
+    }
+
+    /**
+     * inflate the members of a file in parallel, in order
+     * @return the offset in the file where parallel inflation stopped (the file size if all done)
+     */
+    private long inflateParallel(FileChannel channel, long fileSize, ExecutorService executor) throws Exception {
+        HeaderScanner scanner = new HeaderScanner(channel, fileSize);
+        long candidate = scanner.next();
+        long following = scanner.next();
+
+        // without a second header close enough for the first member to be inflated in parallel this is a
+        // single member file (or its first member is too large), stream it without submitting any work
+        if (candidate != 0 || following < 0 || following > maxMemberSize) {
+            return 0;
+        }
+
+        Deque<Long> offsetList = new ArrayDeque<>();
+        Deque<Future<Member>> futureList = new ArrayDeque<>();
+        long current = 0;
+        try {
+            while (current < fileSize) {
+                // keep the pool busy with possible members after current
+                while (futureList.size() < lookAhead && candidate >= 0) {
+                    final long start = candidate;
+                    offsetList.add(start);
+                    futureList.add(executor.submit(() -> inflateMember(channel, start)));
+                    candidate = following;
+                    following = scanner.next();
+                }
+                // headers inside the previous member are false hits
+                // (never interrupt a task, an interrupted read closes the shared channel)
+                while (!offsetList.isEmpty() && offsetList.peek() < current) {
+                    offsetList.poll();
+                    futureList.poll().cancel(false);
+                }
+                if (offsetList.isEmpty() && candidate >= 0) {
+                    continue;
+                }
+                if (offsetList.isEmpty() || offsetList.peek() != current) {
+                    return current; // no member where we expected one, let GZIPInputStream deal with it
+                }
+                offsetList.poll();
+                Member member = futureList.poll().get();
+                if (member == null) {
+                    return current; // too large or not valid
+                }
+                if (member.data.length <= BUFFER_SIZE) {
+                    queue.put(member.data);
+                } else {
+                    for (int i = 0; i < member.data.length; i += BUFFER_SIZE) {
+                        queue.put(Arrays.copyOfRange(member.data, i, Math.min(member.data.length, i + BUFFER_SIZE)));
+                    }
+                }
+                current = member.end;
+            }
+            return current;
+        } finally {
+            for (Future<Member> future : futureList) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * inflate the rest of the file from offset on this thread
+     */
+    private void inflateSequential(FileChannel channel, long offset) throws IOException, InterruptedException {
+        channel.position(offset);
+        InputStream in = new GZIPInputStream(Channels.newInputStream(channel), READ_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int size = 0;
+        int numRead;
+        while ((numRead = in.read(buffer, size, buffer.length - size)) >= 0) {
+            size = size + numRead;
+            if (size == buffer.length) {
+                queue.put(buffer);
+                buffer = new byte[BUFFER_SIZE];
+                size = 0;
+            }
+        }
+        if (size > 0) {
+            queue.put(Arrays.copyOf(buffer, size));
+        }
+    }
+
+    /**
+     * inflate a single member starting at offset
+     * @return the member, or null if there isn't a valid member here, or it is too large
+     */
+    private Member inflateMember(FileChannel channel, long offset) throws IOException {
+        ByteBuffer input = ByteBuffer.allocate(READ_SIZE);
+        long readPosition = offset;
+        int numRead = channel.read(input, readPosition);
+        if (numRead <= 0) {
+            return null;
+        }
+        readPosition = readPosition + numRead;
+        byte[] block = input.array();
+
+        int headerSize = headerSize(block, numRead);
+        if (headerSize < 0) {
+            return null;
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            CRC32 crc = new CRC32();
+            byte[] output = new byte[READ_SIZE * 4];
+            int outputSize = 0;
+            inflater.setInput(block, headerSize, numRead - headerSize);
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    input.clear();
+                    numRead = channel.read(input, readPosition);
+                    if (numRead <= 0) {
+                        return null; // truncated
+                    }
+                    readPosition = readPosition + numRead;
+                    inflater.setInput(block, 0, numRead);
+                }
+                if (outputSize == output.length) {
+                    if (output.length >= maxMemberSize) {
+                        return null;
+                    }
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                int size = inflater.inflate(output, outputSize, output.length - outputSize);
+                if (size == 0 && inflater.needsDictionary()) {
+                    return null;
+                }
+                crc.update(output, outputSize, size);
+                outputSize = outputSize + size;
+            }
+
+            // the 8 byte trailer: crc32 and size (mod 2^32) of the data
+            long deflateEnd = readPosition - inflater.getRemaining();
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            while (trailer.hasRemaining()) {
+                if (channel.read(trailer, deflateEnd + trailer.position()) <= 0) {
+                    return null;
+                }
+            }
+            byte[] t = trailer.array();
+            long storedCrc = (t[0] & 0xffL) | (t[1] & 0xffL) << 8 | (t[2] & 0xffL) << 16 | (t[3] & 0xffL) << 24;
+            long storedSize = (t[4] & 0xffL) | (t[5] & 0xffL) << 8 | (t[6] & 0xffL) << 16 | (t[7] & 0xffL) << 24;
+            if (storedCrc != crc.getValue() || storedSize != (outputSize & 0xffffffffL)) {
+                return null;
+            }
+            return new Member(Arrays.copyOf(output, outputSize), deflateEnd + 8);
+
+        } catch (DataFormatException ex) {
+            return null; // not a member start
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * check a gzip header and return its size
+     * @param block the bytes at the start of the member
+     * @param size the number of valid bytes in block
+     * @return the size of the header, or -1 if this isn't a valid header (or it is too large)
+     */
+    private static int headerSize(byte[] block, int size) {
+        if (size < 10 || !isHeader(block, 0)) {
+            return -1;
+        }
+        int flags = block[3] & 0xff;
+        int i = 10;
+        if ((flags & 4) != 0) { // extra field
+            if (i + 2 > size) {
+                return -1;
+            }
+            i = i + 2 + ((block[i] & 0xff) | (block[i + 1] & 0xff) << 8);
+        }
+        if ((flags & 8) != 0) { // file name
+            while (i < size && block[i] != 0) {
+                i++;
+            }
+            i++;
+        }
+        if ((flags & 16) != 0) { // comment
+            while (i < size && block[i] != 0) {
+                i++;
+            }
+            i++;
+        }
+        if ((flags & 2) != 0) { // header crc
+            i = i + 2;
+        }
+        if (i >= size) {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * @return true if there is a likely gzip header at offset in the file
+     */
+    private static boolean startsWithHeader(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(10);
+        while (header.hasRemaining() && channel.read(header, offset + header.position()) > 0) {
+            // read the fixed part of the header
+        }
+        return !header.hasRemaining() && isHeader(header.array(), 0);
+    }
+
+    /**
+     * a likely gzip header: magic, deflate, no reserved flags, a known extra flag
+     */
+    private static boolean isHeader(byte[] block, int i) {
+        return block[i] == (byte)0x1f && block[i + 1] == (byte)0x8b && block[i + 2] == 8 &&
+               (block[i + 3] & 0xe0) == 0 && (block[i + 8] == 0 || block[i + 8] == 2 || block[i + 8] == 4);
+    }
+
+    /**
+     * find the offsets of likely gzip headers in the file, in order, reading ahead as needed
+     */
+    private static class HeaderScanner {
+
+        private FileChannel channel;
+        private long fileSize;
+
+        // a block of the file starting at blockOffset, and the scan position inside it
+        private ByteBuffer block;
+        private long blockOffset;
+        private int position;
+
+        private HeaderScanner(FileChannel channel, long fileSize) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.block = ByteBuffer.allocate(READ_SIZE);
+            this.block.limit(0);
+            this.blockOffset = 0;
+            this.position = 0;
+        }
+
+        /**
+         * @return the offset of the next header, or -1 if there are no more
+         */
+        private long next() throws IOException {
+            while (true) {
+                // need 9 bytes to check a header
+                if (position + 9 > block.limit()) {
+                    long nextOffset = blockOffset + position;
+                    if (nextOffset + 9 > fileSize) {
+                        return -1;
+                    }
+                    block.clear();
+                    while (block.hasRemaining() && channel.read(block, nextOffset + block.position()) > 0) {
+                        // fill the block
+                    }
+                    block.flip();
+                    blockOffset = nextOffset;
+                    position = 0;
+                    if (block.limit() < 9) {
+                        return -1;
+                    }
+                }
+                byte[] bytes = block.array();
+                int limit = block.limit() - 9;
+                while (position <= limit) {
+                    if (isHeader(bytes, position)) {
+                        position++;
+                        return blockOffset + position - 1;
+                    }
+                    position++;
+                }
+            }
+        }
+    }
+
+    // an inflated member and the offset after its trailer
+    private static class Member {
+        private byte[] data;
+        private long end;
+
+        private Member(byte[] data, long end) {
+            this.data = data;
+            this.end = end;
+        }
+    }
+
+}
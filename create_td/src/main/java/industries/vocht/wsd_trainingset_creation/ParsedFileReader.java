@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * memory mapped reader for Peter's pre-parsed files (format word1:tag word2:tag ... \n, one sentence per line)
+ * the bytes of each line are scanned in place for a focus noun (a focus word with a NN* tag)
+ * and Tokens are only created for the lines that have one, all other lines cost no allocations
+ *
+ */
+public class ParsedFileReader implements SentenceReader {
+
+    // the size of each mapped region of the file
+    private static final int MAP_SIZE = 256 * 1024 * 1024;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long fileSize;
+
+    // the current mapped region, starting at bufferOffset in the file
+    private MappedByteBuffer buffer;
+    private long bufferOffset;
+
+    // the read position inside buffer
+    private int position;
+
+    // the words we're looking for
+    private FocusMatcher focus;
+
+    // copy of a matching line, and the characters of an ascii word, re-used
+    private byte[] lineBytes;
+    private char[] wordChars;
+
+    /**
+     * open a .parsed file for reading
+     * @param filename the file to read
+     * @param focus the focus words, only sentences with one of these as a noun are returned
+     * @throws IOException file error
+     */
+    public ParsedFileReader(String filename, FocusMatcher focus) throws IOException {
+        this.focus = focus;
+        this.file = new RandomAccessFile(filename, "r");
+        this.channel = file.getChannel();
+        this.fileSize = channel.size();
+        this.lineBytes = new byte[4096];
+        this.wordChars = new char[256];
+        map(0, MAP_SIZE);
+    }
+
+    /**
+     * return the next sentence (line) that has a focus noun in it
+     * @return the sentence, or null if there are no more
+     * @throws IOException file error
+     */
+    @Override
+    public Sentence next() throws IOException {
+        while (bufferOffset + position < fileSize) {
+            int lineEnd = findLineEnd(position);
+            if (lineEnd < 0) {
+                // the line continues past this region, map again from its start (larger if need be)
+                long size = (position == 0) ? (long)buffer.limit() * 2 : MAP_SIZE;
+                map(bufferOffset + position, size);
+                continue;
+            }
+            int lineStart = position;
+            position = lineEnd + 1;
+            if (hasFocusNoun(lineStart, lineEnd)) {
+                return toSentence(lineStart, lineEnd);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long getPosition() {
+        return bufferOffset + position;
+    }
+
+    @Override
+    public void skip(long offset) throws IOException {
+        if (offset > fileSize) {
+            throw new IOException("offset " + offset + " past the end of the file");
+        }
+        map(offset, MAP_SIZE);
+    }
+
+    /**
+     * map a region of the file
+     * @param offset the offset in the file
+     * @param size the size of the region (if available)
+     */
+    private void map(long offset, long size) throws IOException {
+        size = Math.min(size, fileSize - offset);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("line too long at offset " + offset);
+        }
+        bufferOffset = offset;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        position = 0;
+    }
+
+    /**
+     * find the end of the line starting at from
+     * @return the offset of the line terminator (or the end of file), -1 if past the end of the region
+     */
+    private int findLineEnd(int from) {
+        int limit = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        if (bufferOffset + limit >= fileSize) {
+            return limit; // last line without a new-line
+        }
+        return -1;
+    }
+
+    /**
+     * check the word:tag pairs of a line for a focus noun
+     * @return true if the line has a focus word tagged NN*
+     */
+    private boolean hasFocusNoun(int lineStart, int lineEnd) {
+        int i = lineStart;
+        while (i < lineEnd) {
+            int tokenEnd = i;
+            while (tokenEnd < lineEnd && buffer.get(tokenEnd) != ' ') {
+                tokenEnd++;
+            }
+            int colon = findColon(i, tokenEnd, buffer);
+            if (colon >= 0 && tokenEnd - colon > 2 && buffer.get(colon + 1) == 'N' && buffer.get(colon + 2) == 'N'
+                    && focus.contains(buffer, i, colon)) {
+                return true;
+            }
+            i = tokenEnd + 1;
+        }
+        return false;
+    }
+
+    /**
+     * create a sentence from all the valid word:tag pairs of a line
+     */
+    private Sentence toSentence(int lineStart, int lineEnd) {
+        int length = lineEnd - lineStart;
+        if (lineBytes.length < length) {
+            lineBytes = new byte[length * 2];
+        }
+        for (int i = 0; i < length; i++) {
+            lineBytes[i] = buffer.get(lineStart + i);
+        }
+
+        Sentence sentence = new Sentence(length / 6, length);
+        int i = 0;
+        while (i < length) {
+            int tokenEnd = i;
+            while (tokenEnd < length && lineBytes[tokenEnd] != ' ') {
+                tokenEnd++;
+            }
+            int colon = findColon(i, tokenEnd, null);
+            if (colon >= 0) {
+                int tagEnd = tokenEnd;
+                while (lineBytes[tagEnd - 1] == ':') {
+                    tagEnd--;
+                }
+                addWord(sentence, i, colon,
+                        PennTag.fromTag(new String(lineBytes, colon + 1, tagEnd - colon - 1, StandardCharsets.UTF_8)));
+            }
+            i = tokenEnd + 1;
+        }
+        return sentence;
+    }
+
+    /**
+     * add the word at lineBytes[start .. end) to a sentence, ascii words don't need a String
+     */
+    private void addWord(Sentence sentence, int start, int end, PennTag tag) {
+        if (wordChars.length < end - start) {
+            wordChars = new char[(end - start) * 2];
+        }
+        for (int i = start; i < end; i++) {
+            byte b = lineBytes[i];
+            if (b < 0) {
+                sentence.add(new String(lineBytes, start, end - start, StandardCharsets.UTF_8), tag);
+                return;
+            }
+            wordChars[i - start] = (char)b;
+        }
+        sentence.add(wordChars, 0, end - start, tag);
+    }
+
+    /**
+     * find the separator of a word:tag pair, same rules as part.split(":") having two parts
+     * (a single ':' followed by a tag, trailing ':' are ignored, the word can be empty as in ":NN")
+     * @param buffer the buffer to read from, or null for lineBytes
+     * @return the offset of the ':' or -1 if this isn't a valid pair
+     */
+    private int findColon(int start, int end, MappedByteBuffer buffer) {
+        while (end > start && get(buffer, end - 1) == ':') {
+            end--;
+        }
+        int colon = -1;
+        for (int i = start; i < end; i++) {
+            if (get(buffer, i) == ':') {
+                if (colon >= 0) {
+                    return -1;
+                }
+                colon = i;
+            }
+        }
+        if (colon < 0 || colon + 1 >= end) {
+            return -1;
+        }
+        return colon;
+    }
+
+    private byte get(MappedByteBuffer buffer, int index) {
+        return buffer != null ? buffer.get(index) : lineBytes[index];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        file.close();
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * the penn treebank tags of the open-nlp pos tagger, a Sentence keeps the ordinal of each token's tag
+ * in a byte instead of a String.  Tags outside this set (pre-parsed files) become UNC, or NN for the
+ * unknown noun tags (NN*) as only the noun tags matter to the windows
+ *
+ */
+public enum PennTag {
+
+    UNC("UNC"),  // unknown tag marker (not tagged)
+
+    CC("CC"), CD("CD"), DT("DT"), EX("EX"), FW("FW"), IN("IN"), JJ("JJ"), JJR("JJR"), JJS("JJS"),
+    LS("LS"), MD("MD"), NN("NN"), NNS("NNS"), NNP("NNP"), NNPS("NNPS"), PDT("PDT"), POS("POS"),
+    PRP("PRP"), PRP_POSSESSIVE("PRP$"), RB("RB"), RBR("RBR"), RBS("RBS"), RP("RP"), SYM("SYM"),
+    TO("TO"), UH("UH"), VB("VB"), VBD("VBD"), VBG("VBG"), VBN("VBN"), VBP("VBP"), VBZ("VBZ"),
+    WDT("WDT"), WP("WP"), WP_POSSESSIVE("WP$"), WRB("WRB"),
+
+    // punctuation
+    OPEN_QUOTE("``"), CLOSE_QUOTE("''"), COMMA(","), FULL_STOP("."), COLON(":"),
+    LEFT_BRACKET("-LRB-"), RIGHT_BRACKET("-RRB-"), HASH("#"), DOLLAR("$");
+
+    // all tags by their name, and by their ordinal
+    private static final Map<String, PennTag> tagMap = new HashMap<>();
+    private static final PennTag[] tagArray = values();
+
+    static {
+        for (PennTag pennTag : tagArray) {
+            tagMap.put(pennTag.tag, pennTag);
+        }
+    }
+
+    private final String tag;
+    private final boolean noun;
+
+    PennTag(String tag) {
+        this.tag = tag;
+        this.noun = tag.startsWith("NN");
+    }
+
+    /**
+     * @param tag a penn tag as a String
+     * @return the penn tag, UNC (or NN for a noun tag) if it isn't one of the known tags
+     */
+    public static PennTag fromTag(String tag) {
+        PennTag pennTag = tagMap.get(tag);
+        if (pennTag == null) {
+            return tag.startsWith("NN") ? NN : UNC;
+        }
+        return pennTag;
+    }
+
+    /**
+     * @param id the id (ordinal) of a tag
+     * @return the penn tag
+     */
+    public static PennTag fromId(int id) {
+        return tagArray[id];
+    }
+
+    /**
+     * @return the id of this tag (its ordinal, it fits in a byte)
+     */
+    public byte getId() {
+        return (byte)ordinal();
+    }
+
+    /**
+     * @return the same as getTag().startsWith("NN")
+     */
+    public boolean isNoun() {
+        return noun;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String toString() {
+        return tag;
+    }
+
+}
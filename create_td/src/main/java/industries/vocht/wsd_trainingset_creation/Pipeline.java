@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * a simple staged pipeline.  Each stage has its own threads and hands its results to the next
+ * stage through a bounded queue, a stage that gets ahead of the next one blocks (back-pressure).
+ * Time spent working, waiting for input and waiting for the next stage is kept per stage,
+ * which shows the stage that limits the throughput of the pipeline
+ *
+ */
+public class Pipeline {
+
+    // how long a thread waits on a queue before checking for failure / end of input
+    private static final long POLL_TIME_IN_MS = 100;
+
+    // the size of the queues between stages
+    private int queueSize;
+
+    // all the stages in order
+    private List<Stage<?, ?>> stageList;
+
+    // the first error of any stage, stops the pipeline
+    private AtomicReference<Throwable> failure;
+
+    // wall time of run()
+    private long runTimeInNanos;
+
+    /**
+     * processes a single item of a stage, one instance per thread
+     */
+    public interface Processor<I, O> {
+        void process(I item, Output<O> output) throws Exception;
+
+        // release any resources of this processor (thread is done)
+        default void close() {
+        }
+    }
+
+    /**
+     * create a processor for a thread of a stage
+     */
+    public interface ProcessorFactory<I, O> {
+        Processor<I, O> create() throws Exception;
+    }
+
+    /**
+     * hand an item to the next stage, blocks while the next stage is full
+     */
+    public interface Output<O> {
+        void put(O item) throws InterruptedException;
+    }
+
+    /**
+     * create an empty pipeline
+     * @param queueSize the maximum number of items waiting between two stages
+     */
+    public Pipeline(int queueSize) {
+        this.queueSize = Math.max(queueSize, 1);
+        this.stageList = new ArrayList<>();
+        this.failure = new AtomicReference<>();
+    }
+
+    /**
+     * add the first stage, reading from a fixed set of items
+     * @param name the name of the stage for statistics
+     * @param numThreads the number of threads for this stage
+     * @param itemList the items to process
+     * @param factory creates a processor for each thread
+     * @return the stage
+     */
+    public <I, O> Stage<I, O> addSource(String name, int numThreads, Collection<I> itemList,
+                                        ProcessorFactory<I, O> factory) {
+        Stage<I, O> stage = new Stage<>(name, numThreads, new LinkedBlockingQueue<>(itemList), null, factory);
+        stageList.add(stage);
+        return stage;
+    }
+
+    /**
+     * add a stage that processes the output of another stage
+     * @param name the name of the stage for statistics
+     * @param numThreads the number of threads for this stage
+     * @param upstream the stage to take items from
+     * @param factory creates a processor for each thread
+     * @return the stage
+     */
+    public <I, O> Stage<I, O> addStage(String name, int numThreads, Stage<?, I> upstream,
+                                       ProcessorFactory<I, O> factory) {
+        Stage<I, O> stage = new Stage<>(name, numThreads, upstream.output, upstream, factory);
+        stageList.add(stage);
+        return stage;
+    }
+
+    /**
+     * run all stages until all items have passed through, or until a stage fails
+     * @throws Exception the first failure of any stage
+     */
+    public void run() throws Exception {
+        long start = System.nanoTime();
+        List<Thread> threadList = new ArrayList<>();
+        for (Stage<?, ?> stage : stageList) {
+            threadList.addAll(stage.start());
+        }
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+        runTimeInNanos = System.nanoTime() - start;
+
+        Throwable ex = failure.get();
+        if (ex instanceof Exception) {
+            throw (Exception)ex;
+        } else if (ex != null) {
+            throw new Exception(ex);
+        }
+    }
+
+    /**
+     * print the time spent by each stage
+     */
+    public void printStatistics() {
+        if (runTimeInNanos <= 0) {
+            return;
+        }
+        System.out.println("pipeline: " + (runTimeInNanos / 1_000_000) + " ms");
+        Stage<?, ?> busiest = null;
+        for (Stage<?, ?> stage : stageList) {
+            System.out.println(String.format("   %-16s threads:%3d, items:%10d, busy:%5.1f%%, waiting for input:%5.1f%%, waiting for output:%5.1f%%",
+                    stage.name, stage.numThreads, stage.itemCount.get(), stage.percentage(stage.busyTime.get()),
+                    stage.percentage(stage.inputWaitTime.get()), stage.percentage(stage.outputWaitTime.get())));
+            if (busiest == null || stage.percentage(stage.busyTime.get()) > busiest.percentage(busiest.busyTime.get())) {
+                busiest = stage;
+            }
+        }
+        if (busiest != null) {
+            System.out.println("   bottleneck: " + busiest.name);
+        }
+    }
+
+    // stop all stages
+    private void fail(Throwable ex) {
+        failure.compareAndSet(null, ex);
+    }
+
+    private boolean isFailed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * a stage of the pipeline, its threads and its output queue
+     */
+    public class Stage<I, O> {
+
+        private String name;
+        private int numThreads;
+        private BlockingQueue<I> input;
+        private Stage<?, I> upstream;
+        private BlockingQueue<O> output;
+        private ProcessorFactory<I, O> factory;
+
+        // number of threads still running
+        private AtomicInteger running;
+
+        // statistics
+        private AtomicLong itemCount = new AtomicLong();
+        private AtomicLong busyTime = new AtomicLong();
+        private AtomicLong inputWaitTime = new AtomicLong();
+        private AtomicLong outputWaitTime = new AtomicLong();
+
+        private Stage(String name, int numThreads, BlockingQueue<I> input, Stage<?, I> upstream,
+                      ProcessorFactory<I, O> factory) {
+            this.name = name;
+            this.numThreads = Math.max(numThreads, 1);
+            this.input = input;
+            this.upstream = upstream;
+            this.output = new ArrayBlockingQueue<>(queueSize);
+            this.factory = factory;
+            this.running = new AtomicInteger(this.numThreads);
+        }
+
+        private List<Thread> start() {
+            List<Thread> threadList = new ArrayList<>();
+            for (int i = 0; i < numThreads; i++) {
+                Thread thread = new Thread(this::work, name + "-" + i);
+                thread.setDaemon(true);
+                threadList.add(thread);
+                thread.start();
+            }
+            return threadList;
+        }
+
+        // true once all threads of this stage have finished
+        private boolean isDone() {
+            return running.get() == 0;
+        }
+
+        private void work() {
+            Processor<I, O> processor = null;
+            StageOutput stageOutput = new StageOutput();
+            try {
+                processor = factory.create();
+                while (!isFailed()) {
+                    long t0 = System.nanoTime();
+                    I item = input.poll(POLL_TIME_IN_MS, TimeUnit.MILLISECONDS);
+                    long t1 = System.nanoTime();
+                    inputWaitTime.addAndGet(t1 - t0);
+                    if (item == null) {
+                        if ((upstream == null || upstream.isDone()) && input.isEmpty()) {
+                            break; // no more input
+                        }
+                        continue;
+                    }
+                    long waitBefore = stageOutput.waitTime;
+                    processor.process(item, stageOutput);
+                    itemCount.incrementAndGet();
+                    busyTime.addAndGet(System.nanoTime() - t1 - (stageOutput.waitTime - waitBefore));
+                }
+            } catch (Throwable ex) {
+                fail(ex);
+            } finally {
+                if (processor != null) {
+                    processor.close();
+                }
+                outputWaitTime.addAndGet(stageOutput.waitTime);
+                running.decrementAndGet();
+            }
+        }
+
+        // a time as a percentage of the time available to this stage
+        private double percentage(long timeInNanos) {
+            return (double)(timeInNanos * 100) / ((double)runTimeInNanos * numThreads);
+        }
+
+        /**
+         * the output of a single thread, keeps the time that thread was blocked by the next stage
+         */
+        private class StageOutput implements Output<O> {
+
+            private long waitTime;
+
+            @Override
+            public void put(O item) throws InterruptedException {
+                long t0 = System.nanoTime();
+                try {
+                    while (!output.offer(item, POLL_TIME_IN_MS, TimeUnit.MILLISECONDS)) {
+                        if (isFailed()) {
+                            throw new InterruptedException("pipeline stopped");
+                        }
+                    }
+                } finally {
+                    waitTime = waitTime + (System.nanoTime() - t0);
+                }
+            }
+        }
+
+    }
+
+}
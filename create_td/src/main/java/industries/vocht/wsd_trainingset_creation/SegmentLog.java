@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * appends the windows of all words to a few large segment files (sequential writes, one open file)
+ * instead of keeping a file open for each ambiguous word.  Once step 1 is done the segments are
+ * split into the unlabelled files of the words (see split()), a limited number of files at a time.
+ * Not thread safe, used by the single write thread of step 1
+ *
+ * with a sample size (maxWindowsPerWord) each word keeps a uniform random sample of its windows, taken
+ * while they are written (a reservoir of sample size slots per word): the first windows of a word fill its
+ * slots, after that the n-th window replaces the window of a random slot with probability (sample size / n),
+ * or is left out.  Only the windows that go into a slot are written, so a word with n windows has about
+ * sample size * (1 + ln(n / sample size)) records in the segments, not n.  The split keeps the last window
+ * written to each slot.  The window counts of the checkpoint are the n of each word, a restarted run
+ * continues the reservoirs where its checkpoint was (with the same sample size)
+ *
+ * segment files (step1-00000.segment, step1-00001.segment, ...) are records of:
+ *     varint id of the (singular) word, varint slot (0 without a sample size), varint word count,
+ *     varint id of each word of the window
+ *
+ */
+public class SegmentLog implements WindowWriter {
+
+    public static final String PREFIX = "step1-";
+    public static final String EXTENSION = ".segment";
+
+    // the directory of the segments
+    private String nnetUnlabelledDirectory;
+
+    // start a new segment once the current one is this big
+    private long segmentSizeInBytes;
+
+    // the ids of the words
+    private Vocabulary vocabulary;
+
+    // the number of windows sampled for each word (all windows if <= 0), and the windows seen of each word id
+    private int maxWindowsPerWord;
+    private int[] seenArray;
+
+    // the segment being written, its number and size
+    private FileOutputStream out;
+    private BufferedOutputStream buffer;
+    private int segment;
+    private long size;
+
+    // the sizes of the segments written by this run
+    private Map<String, Long> sizeMap;
+
+    /**
+     * open the segments of a directory for writing, after restoring them to their checkpoint sizes
+     * (segments not in the checkpoint, left by an earlier run, are removed)
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     * @param segmentSizeInBytes the size of each segment
+     * @param maxWindowsPerWord the number of windows sampled for each word (all windows if <= 0)
+     * @param vocabulary the ids of the words
+     * @param checkpoint the checkpoint of step 1, its window counts are the windows seen of each word
+     * @throws IOException file error
+     */
+    public SegmentLog(String nnetUnlabelledDirectory, long segmentSizeInBytes, int maxWindowsPerWord,
+                      Vocabulary vocabulary, Checkpoint checkpoint) throws IOException {
+        this.nnetUnlabelledDirectory = nnetUnlabelledDirectory;
+        this.segmentSizeInBytes = segmentSizeInBytes;
+        this.maxWindowsPerWord = maxWindowsPerWord;
+        this.vocabulary = vocabulary;
+        this.seenArray = new int[Math.max(vocabulary.size(), 1)];
+        for (Map.Entry<String, Integer> entry : checkpoint.getWindowCounts().entrySet()) {
+            setSeen(vocabulary.getId(entry.getKey()), entry.getValue());
+        }
+        this.sizeMap = new HashMap<>();
+        this.segment = 0;
+        for (File file : listSegments(nnetUnlabelledDirectory)) {
+            Long checkpointSize = checkpoint.getOutputSize(file.getName());
+            if (checkpointSize == null) {
+                if (!file.delete()) {
+                    throw new IOException("can't remove " + file.getAbsolutePath());
+                }
+            } else {
+                if (file.length() < checkpointSize) {
+                    throw new IOException(file.getAbsolutePath() + " is smaller than its checkpoint size " + checkpointSize);
+                }
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(checkpointSize);
+                }
+                segment = Math.max(segment, getNumber(file) + 1);
+            }
+        }
+    }
+
+    /**
+     * append a window to the current segment, if it goes into the sample of its word
+     * @param word the (singular) word the window belongs to
+     * @param window the ids of the words of the window
+     * @return true (a window left out of the sample is still a window of the word, the size limit
+     *         is that of the unlabelled files)
+     * @throws IOException file error
+     */
+    @Override
+    public boolean write(String word, int[] window) throws IOException {
+        int wordId = vocabulary.getId(word);
+        int slot = 0;
+        if (maxWindowsPerWord > 0) {
+            int seen = getSeen(wordId) + 1;
+            setSeen(wordId, seen);
+            slot = getSlot(word, seen, maxWindowsPerWord);
+            if (slot < 0) {
+                return true; // left out of the sample
+            }
+        }
+        if (out == null || size >= segmentSizeInBytes) {
+            startSegment();
+        }
+        size = size + SentenceCache.writeVarInt(buffer, wordId);
+        size = size + SentenceCache.writeVarInt(buffer, slot);
+        size = size + SentenceCache.writeVarInt(buffer, window.length);
+        for (int id : window) {
+            size = size + SentenceCache.writeVarInt(buffer, id);
+        }
+        return true;
+    }
+
+    /**
+     * flush the current segment to disk
+     * @return the size of each segment written to, by segment filename
+     * @throws IOException file error
+     */
+    @Override
+    public Map<String, Long> sync() throws IOException {
+        if (out != null) {
+            buffer.flush();
+            out.getChannel().force(false);
+            sizeMap.put(segmentName(segment), size);
+        }
+        return new HashMap<>(sizeMap);
+    }
+
+    /**
+     * close the current segment
+     * @throws IOException file error
+     */
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            try {
+                buffer.flush();
+            } finally {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * the reservoir slot of the n-th window of a word (reservoir sampling, algorithm R).  The random
+     * choice only depends on the word and n, so a restarted run makes the same choices without
+     * having to keep the state of a random generator
+     * @param word the (singular) word
+     * @param n the number of windows of the word seen, including this one
+     * @param sampleSize the number of slots
+     * @return the slot the window goes into, or -1 if it is left out of the sample
+     */
+    static int getSlot(String word, int n, int sampleSize) {
+        if (n <= sampleSize) {
+            return n - 1;
+        }
+        int r = new SplittableRandom(word.hashCode() * 0x9e3779b97f4a7c15L + n).nextInt(n);
+        return r < sampleSize ? r : -1;
+    }
+
+    private int getSeen(int wordId) {
+        return wordId < seenArray.length ? seenArray[wordId] : 0;
+    }
+
+    private void setSeen(int wordId, int seen) {
+        if (wordId >= seenArray.length) {
+            seenArray = Arrays.copyOf(seenArray, Math.max(seenArray.length * 2, wordId + 1));
+        }
+        seenArray[wordId] = seen;
+    }
+
+    /**
+     * close the current segment, and start the next one
+     */
+    private void startSegment() throws IOException {
+        if (out != null) {
+            sync();
+            close();
+            segment = segment + 1;
+        }
+        out = new FileOutputStream(nnetUnlabelledDirectory + segmentName(segment));
+        buffer = new BufferedOutputStream(out, SentenceCache.BUFFER_SIZE);
+        size = 0;
+    }
+
+    /**
+     * write the windows of all segments to the unlabelled files of their words, the words are done
+     * in groups of maxOpenFiles (each group reads all segments once) so only that many files are open.
+     * Existing unlabelled files of the words are replaced (left by a split that didn't complete)
+     *
+     * with maxWindowsPerWord the segments have the reservoirs of the words: a group first reads the segments
+     * to find the last window written to each slot of its words, then writes only those (in corpus order)
+     *
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     * @param wordList the words of the segments
+     * @param windowCountMap the windows seen of each word (the window counts of the checkpoint)
+     * @param maxOpenFiles the maximum number of unlabelled files to write at the same time
+     * @param maxFileSizeInBytes max file size of each unlabelled file (ignored if <= 0)
+     * @param maxWindowsPerWord the number of windows sampled for each word (all windows if <= 0),
+     *                          the same as when the segments were written
+     * @param vocabulary the ids of the words
+     * @param binary write the binary format instead of csv
+     * @throws IOException file error
+     */
+    public static void split(String nnetUnlabelledDirectory, List<String> wordList, Map<String, Integer> windowCountMap,
+                             int maxOpenFiles, long maxFileSizeInBytes, int maxWindowsPerWord, Vocabulary vocabulary,
+                             boolean binary) throws IOException {
+        List<File> segmentList = listSegments(nnetUnlabelledDirectory);
+        List<String> sortedList = new ArrayList<>(wordList);
+        Collections.sort(sortedList);
+
+        int groupSize = Math.max(maxOpenFiles, 1);
+        for (int start = 0; start < sortedList.size(); start += groupSize) {
+            List<String> group = sortedList.subList(start, Math.min(start + groupSize, sortedList.size()));
+            System.out.println("step 1: splitting " + segmentList.size() + " segments, words " + (start + 1) + " to " +
+                               (start + group.size()) + " of " + sortedList.size());
+
+            // the words of this group, by id
+            Map<Integer, Sample> groupMap = new HashMap<>();
+            for (String word : group) {
+                new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, binary)).delete();
+                groupMap.put(vocabulary.getId(word), new Sample(word));
+            }
+
+            // the record of each slot that is written last
+            if (maxWindowsPerWord > 0) {
+                scan(segmentList, (wordId, slot, window, count) -> {
+                    Sample sample = groupMap.get(wordId);
+                    if (sample != null) {
+                        sample.setLast(slot);
+                    }
+                });
+            }
+
+            UnlabelledWriter writer = new UnlabelledWriter(nnetUnlabelledDirectory, maxFileSizeInBytes, vocabulary, binary);
+            try {
+                scan(segmentList, (wordId, slot, window, count) -> {
+                    Sample sample = groupMap.get(wordId);
+                    if (sample != null && (maxWindowsPerWord <= 0 || sample.isLast(slot))) {
+                        writer.write(sample.word, Arrays.copyOf(window, count));
+                    }
+                });
+            } finally {
+                writer.close();
+            }
+            if (maxWindowsPerWord > 0) {
+                for (Sample sample : groupMap.values()) {
+                    int total = windowCountMap.getOrDefault(sample.word, 0);
+                    if (total > maxWindowsPerWord) {
+                        System.out.println(sample.word + ": sampled " + maxWindowsPerWord + " of " + total + " windows" +
+                                           " (" + sample.records + " written to the segments)");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * read all records of the segments
+     * @param segmentList the segments, in order
+     * @param visitor gets the word id, the slot and the window of each record (the window array is re-used)
+     */
+    private static void scan(List<File> segmentList, RecordVisitor visitor) throws IOException {
+        int[] window = new int[64];
+        for (File file : segmentList) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), SentenceCache.BUFFER_SIZE)) {
+                int first;
+                while ((first = in.read()) >= 0) {
+                    int wordId = readVarInt(first, in);
+                    int slot = SentenceCache.readVarInt(in);
+                    int count = SentenceCache.readVarInt(in);
+                    if (window.length < count) {
+                        window = new int[count * 2];
+                    }
+                    for (int i = 0; i < count; i++) {
+                        window[i] = SentenceCache.readVarInt(in);
+                    }
+                    visitor.visit(wordId, slot, window, count);
+                }
+            }
+        }
+    }
+
+    /**
+     * remove all segments (after they've been split)
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     */
+    public static void delete(String nnetUnlabelledDirectory) {
+        for (File file : listSegments(nnetUnlabelledDirectory)) {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return the segments of a directory, in the order they were written
+     */
+    private static List<File> listSegments(String nnetUnlabelledDirectory) {
+        List<File> segmentList = new ArrayList<>();
+        File[] fileArray = new File(nnetUnlabelledDirectory).listFiles();
+        if (fileArray != null) {
+            for (File file : fileArray) {
+                if (file.getName().startsWith(PREFIX) && file.getName().endsWith(EXTENSION)) {
+                    segmentList.add(file);
+                }
+            }
+        }
+        segmentList.sort(Comparator.comparingInt(SegmentLog::getNumber));
+        return segmentList;
+    }
+
+    private static String segmentName(int segment) {
+        return PREFIX + String.format("%05d", segment) + EXTENSION;
+    }
+
+    private static int getNumber(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+    }
+
+    /**
+     * read the rest of a varint whose first byte has been read
+     */
+    private static int readVarInt(int first, InputStream in) throws IOException {
+        if ((first & 0x80) == 0) {
+            return first;
+        }
+        return (first & 0x7f) | (SentenceCache.readVarInt(in) << 7);
+    }
+
+    // a record of a segment
+    private interface RecordVisitor {
+        void visit(int wordId, int slot, int[] window, int count) throws IOException;
+    }
+
+    // the records of a word in the segments, and for each slot of its reservoir the number of the
+    // record written to it last (the sample)
+    private static class Sample {
+        private String word;
+        private int records;
+        private int[] lastArray;
+        private int record;
+
+        private Sample(String word) {
+            this.word = word;
+            this.lastArray = new int[16];
+        }
+
+        // the next record of the word is written to slot
+        private void setLast(int slot) {
+            if (slot >= lastArray.length) {
+                lastArray = Arrays.copyOf(lastArray, Math.max(lastArray.length * 2, slot + 1));
+            }
+            lastArray[slot] = records;
+            records = records + 1;
+        }
+
+        // the next record of the word (written to slot) is the last one of its slot
+        private boolean isLast(int slot) {
+            boolean last = slot < lastArray.length && lastArray[slot] == record;
+            record = record + 1;
+            return last;
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+/**
+ * which senses (sets) of a word each key of its WindowCorpus is in, as a bit mask per key id
+ * (one long per 64 senses).  Counting the senses of the parts of a window is then a few bit
+ * operations per part instead of a HashSet lookup per part per sense
+ *
+ */
+public class SenseTable {
+
+    // the number of senses, and the number of longs per key
+    private int numSenses;
+    private int stride;
+
+    // the senses of key k are the bits of maskArray[k * stride] .. maskArray[k * stride + stride - 1]
+    private long[] maskArray;
+
+    /**
+     * build the table for the keys of a corpus from the lexicon senses of the vocabulary
+     * @param corpus the windows of the word
+     * @param vocabulary the vocabulary of the corpus, with the lexicon of the word (see Vocabulary.addLexicon())
+     * @param word the word
+     * @param numSenses the number of sets (senses) of the word in the lexicon
+     */
+    public SenseTable(WindowCorpus corpus, Vocabulary vocabulary, String word, int numSenses) {
+        this.numSenses = numSenses;
+        this.stride = Math.max(1, (numSenses + 63) >>> 6);
+        this.maskArray = new long[corpus.getNumKeys() * stride];
+        int wordId = vocabulary.findId(word);
+        for (int keyId = 0; keyId < corpus.getNumKeys(); keyId++) {
+            int keyWordId = corpus.getKeyWordId(keyId);
+            for (int i = 0; i < vocabulary.getSenseCount(keyWordId); i++) {
+                if (vocabulary.getSenseNoun(keyWordId, i) == wordId && vocabulary.getSenseIndex(keyWordId, i) < numSenses) {
+                    add(keyId, vocabulary.getSenseIndex(keyWordId, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of senses
+     */
+    public int getNumSenses() {
+        return numSenses;
+    }
+
+    /**
+     * add a key to a sense
+     * @param keyId the key id
+     * @param sense the index of the sense
+     */
+    public void add(int keyId, int sense) {
+        maskArray[keyId * stride + (sense >>> 6)] |= 1L << sense;
+    }
+
+    /**
+     * @param keyId the key id
+     * @param sense the index of the sense
+     * @return true if the key is in the sense
+     */
+    public boolean contains(int keyId, int sense) {
+        return (maskArray[keyId * stride + (sense >>> 6)] & (1L << sense)) != 0;
+    }
+
+    /**
+     * @param keyId the key id
+     * @return true if the key is in any of the senses
+     */
+    public boolean isInAny(int keyId) {
+        int offset = keyId * stride;
+        for (int w = 0; w < stride; w++) {
+            if (maskArray[offset + w] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * add one to the count of each sense a key is in
+     * @param keyId the key id
+     * @param counts the counts by sense, updated
+     */
+    public void count(int keyId, int[] counts) {
+        int offset = keyId * stride;
+        for (int w = 0; w < stride; w++) {
+            long bits = maskArray[offset + w];
+            while (bits != 0) {
+                int sense = (w << 6) + Long.numberOfTrailingZeros(bits);
+                counts[sense] = counts[sense] + 1;
+                bits = bits & (bits - 1);
+            }
+        }
+    }
+
+}
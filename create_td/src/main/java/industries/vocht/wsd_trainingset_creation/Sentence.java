@@ -1,33 +1,232 @@
 package industries.vocht.wsd_trainingset_creation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Created by peter on 19/02/17.
  *
- * a list of tokens, an English sentence
+ * the tokens of an English sentence, kept in columns (not as Token objects):
+ * the text of all tokens one after the other in a single char array, the offset of each
+ * token in it, and the penn tag id (PennTag ordinal) of each token
  *
  */
 public class Sentence {
 
-    private List<Token> tokenList;
+    // the number of tokens
+    private int size;
+
+    // the text of all the tokens, token i is chars[offsetArray[i]] up to chars[offsetArray[i + 1]]
+    private char[] chars;
+    private int[] offsetArray;
+
+    // the PennTag id of each token
+    private byte[] tagArray;
+
+    // compact sentences (without white-space tokens): the position of each token in the full
+    // token stream, and the size of the full token stream.  null if the tokens are the full stream
+    private int[] positionArray;
+    private int fullSize;
 
     public Sentence() {
-        this.tokenList = new ArrayList<>();
+        this(16, 64);
     }
 
+    /**
+     * @param tokenCapacity the initial number of tokens
+     * @param charCapacity the initial number of characters of all tokens
+     */
+    public Sentence(int tokenCapacity, int charCapacity) {
+        this.chars = new char[Math.max(charCapacity, 1)];
+        this.offsetArray = new int[Math.max(tokenCapacity, 1) + 1];
+        this.tagArray = new byte[Math.max(tokenCapacity, 1)];
+    }
+
+    /**
+     * @param tokenList the tokens (and tags) of the sentence
+     */
     public Sentence(List<Token> tokenList) {
-        this.tokenList = tokenList;
+        this(tokenList.size(), tokenList.size() * 8);
+        for (Token token : tokenList) {
+            add(token.getText(), PennTag.fromTag(token.getTag()));
+        }
     }
 
+    /**
+     * add a token
+     * @param text the text of the token
+     * @param tag its tag
+     */
+    public void add(String text, PennTag tag) {
+        int offset = offsetArray[size];
+        ensureCapacity(offset + text.length());
+        text.getChars(0, text.length(), chars, offset);
+        addOffset(offset + text.length(), tag);
+    }
 
-    public List<Token> getTokenList() {
-        return tokenList;
+    /**
+     * add a token
+     * @param source the characters the text of the token is in
+     * @param start the offset of the first character of the token in source
+     * @param end the offset after the last character
+     * @param tag its tag
+     */
+    public void add(char[] source, int start, int end, PennTag tag) {
+        int offset = offsetArray[size];
+        ensureCapacity(offset + end - start);
+        System.arraycopy(source, start, chars, offset, end - start);
+        addOffset(offset + end - start, tag);
+    }
+
+    private void ensureCapacity(int charCapacity) {
+        if (chars.length < charCapacity) {
+            chars = Arrays.copyOf(chars, Math.max(charCapacity, chars.length * 2));
+        }
+        if (tagArray.length == size) {
+            tagArray = Arrays.copyOf(tagArray, size * 2);
+            offsetArray = Arrays.copyOf(offsetArray, size * 2 + 1);
+        }
+    }
+
+    private void addOffset(int end, PennTag tag) {
+        tagArray[size] = tag.getId();
+        size = size + 1;
+        offsetArray[size] = end;
+    }
+
+    /**
+     * make this a compact sentence, some tokens of the full token stream have been left out
+     * @param positionArray the position of each token in the full token stream
+     * @param fullSize the number of tokens of the full token stream
+     */
+    public void setPositions(int[] positionArray, int fullSize) {
+        this.positionArray = positionArray;
+        this.fullSize = fullSize;
+    }
+
+    /**
+     * @return the number of tokens
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the text of the token
+     */
+    public String getText(int index) {
+        return new String(chars, offsetArray[index], offsetArray[index + 1] - offsetArray[index]);
+    }
+
+    /**
+     * @return the characters of all tokens (see getStart() and getEnd())
+     */
+    public char[] getChars() {
+        return chars;
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the offset of the first character of the token in getChars()
+     */
+    public int getStart(int index) {
+        return offsetArray[index];
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the offset after the last character of the token in getChars()
+     */
+    public int getEnd(int index) {
+        return offsetArray[index + 1];
+    }
+
+    /**
+     * @param index the index of a token
+     * @param ch a character
+     * @return true if the token is just this character
+     */
+    public boolean isChar(int index, char ch) {
+        int start = offsetArray[index];
+        return offsetArray[index + 1] == start + 1 && chars[start] == ch;
+    }
+
+    /**
+     * @param index the index of a token
+     * @return true if the token is all text (the same as Token.isText(), no numbers, full-stops or commas)
+     */
+    public boolean isText(int index) {
+        for (int i = offsetArray[index]; i < offsetArray[index + 1]; i++) {
+            char ch = chars[i];
+            if ((ch >= '0' && ch <= '9') || ch == '.' || ch == ',') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the penn tag of the token
+     */
+    public PennTag getTag(int index) {
+        return PennTag.fromId(tagArray[index]);
+    }
+
+    /**
+     * @param index the index of a token
+     * @param tag the penn tag of the token
+     */
+    public void setTag(int index, PennTag tag) {
+        tagArray[index] = tag.getId();
     }
 
-    public void setTokenList(List<Token> tokenList) {
-        this.tokenList = tokenList;
+    /**
+     * @param focus the focus words
+     * @return true if any of the tokens is a focus word (ignoring case)
+     */
+    public boolean hasFocusWord(FocusMatcher focus) {
+        for (int i = 0; i < size; i++) {
+            if (focus.contains(chars, offsetArray[i], offsetArray[i + 1])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if this sentence has left out some tokens of its full token stream
+     */
+    public boolean isCompact() {
+        return positionArray != null;
+    }
+
+    /**
+     * @param index the index of a token
+     * @return the position of the token in the full token stream
+     */
+    public int getPosition(int index) {
+        return positionArray == null ? index : positionArray[index];
+    }
+
+    /**
+     * @return the number of tokens of the full token stream
+     */
+    public int getFullSize() {
+        return positionArray == null ? size : fullSize;
+    }
+
+    /**
+     * @return the tokens as Token objects (a copy)
+     */
+    public List<Token> getTokenList() {
+        List<Token> tokenList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokenList.add(new Token(getText(i), getTag(i).getTag()));
+        }
+        return tokenList;
     }
 
 }
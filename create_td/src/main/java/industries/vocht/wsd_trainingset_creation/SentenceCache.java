@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * a store of tokenized and penn tagged sentences, one cache file for each input file.
+ * The cache file is named after the input file, its size and its modification time, so finding
+ * out there is nothing cached for a file doesn't read it.  Only once a cache file exists is the
+ * content of the input file hashed: the first run that uses the cache file records the hash
+ * (name.sentences.sha1), a later run with a different hash parses the file again.
+ * Re-running step 1 with a different window size, lexicon or focus list reads the sentences
+ * from the cache and doesn't need open-nlp at all
+ *
+ * binary format: magic, version, then for each sentence: varint (token count + 1), varint size
+ * of the full token stream (0 if the sentence isn't compact) and for each token: varint text length,
+ * utf-8 text, varint tag id (a new tag id is followed by its varint length and utf-8 text) and for
+ * compact sentences the varint number of tokens left out before it, a 0 marks the end of the file
+ *
+ */
+public class SentenceCache {
+
+    // "WSDC" + the version of the format (change if the tokenizer / tagger output changes)
+    public static final int MAGIC = 0x57534443;
+    public static final int VERSION = 2;
+
+    // buffer size for reading / writing cache files
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    // where the cache files live
+    private String directory;
+
+    // compact sentences (without white-space tokens) are cached apart, they're tagged differently
+    private boolean compact;
+
+    // the files being written, abandoned on close
+    private final Set<SentenceCacheWriter> writerSet;
+
+    /**
+     * open (create) a sentence cache
+     * @param directory the directory to keep the cache files in
+     * @param compact the sentences are compact (without white-space tokens)
+     */
+    public SentenceCache(String directory, boolean compact) {
+        if (!directory.endsWith("/")) {
+            directory += "/";
+        }
+        this.directory = directory;
+        this.compact = compact;
+        this.writerSet = new HashSet<>();
+        new File(directory).mkdirs();
+    }
+
+    /**
+     * @param file the input file
+     * @return the name of the cache file of the current size and modification time of file
+     */
+    public String getFilename(File file) {
+        StringBuilder sb = new StringBuilder(directory).append(file.getName());
+        sb.append("-").append(file.length()).append("-").append(file.lastModified());
+        if (compact) {
+            sb.append("-compact");
+        }
+        return sb.append(".sentences").toString();
+    }
+
+    /**
+     * open a cache file for reading
+     * @param cacheFilename the cache file (see getFilename())
+     * @param file the input file the cache file was made from
+     * @return the reader, or null if the file isn't in the cache (or of an older version, or the content
+     *         of file has changed since the cache file was first used)
+     * @throws IOException file error
+     */
+    public SentenceCacheReader open(String cacheFilename, File file) throws IOException {
+        if (!new File(cacheFilename).exists()) {
+            return null;
+        }
+
+        // the same size and time, check the content is the same too
+        File hashFile = new File(cacheFilename + ".sha1");
+        String hash = getHash(file);
+        if (hashFile.exists()) {
+            String cachedHash = new String(Files.readAllBytes(hashFile.toPath()), StandardCharsets.UTF_8).trim();
+            if (!cachedHash.equals(hash)) {
+                System.out.println("the content of " + file.getAbsolutePath() + " changed, parsing it again");
+                hashFile.delete();
+                new File(cacheFilename).delete();
+                return null;
+            }
+        }
+
+        SentenceCacheReader reader = new SentenceCacheReader(cacheFilename);
+        if (!reader.isValid()) {
+            reader.close();
+            return null;
+        }
+        if (!hashFile.exists()) {
+            Files.write(hashFile.toPath(), hash.getBytes(StandardCharsets.UTF_8));
+        }
+        return reader;
+    }
+
+    /**
+     * @return the SHA-1 of the content of a file, in hex
+     */
+    private static String getHash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int size;
+            while ((size = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, size);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * start a new cache file, it only appears in the cache once complete
+     * @param cacheFilename the cache file (see getFilename())
+     * @return the writer
+     * @throws IOException file error
+     */
+    public SentenceCacheWriter create(String cacheFilename) throws IOException {
+        SentenceCacheWriter writer = new SentenceCacheWriter(this, cacheFilename);
+        synchronized (writerSet) {
+            writerSet.add(writer);
+        }
+        return writer;
+    }
+
+    /**
+     * a writer is done (complete or abandoned)
+     */
+    void remove(SentenceCacheWriter writer) {
+        synchronized (writerSet) {
+            writerSet.remove(writer);
+        }
+    }
+
+    /**
+     * abandon all incomplete cache files (step 1 stopped before finishing them)
+     */
+    public void close() {
+        Set<SentenceCacheWriter> incomplete;
+        synchronized (writerSet) {
+            incomplete = new HashSet<>(writerSet);
+        }
+        for (SentenceCacheWriter writer : incomplete) {
+            writer.abandon();
+        }
+    }
+
+    /**
+     * write an unsigned variable length int, 7 bits per byte
+     * @return the number of bytes written
+     */
+    public static int writeVarInt(OutputStream out, int value) throws IOException {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value = value >>> 7;
+            size = size + 1;
+        }
+        out.write(value);
+        return size;
+    }
+
+    /**
+     * read an unsigned variable length int
+     */
+    public static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("unexpected end of file");
+            }
+            value = value | ((b & 0x7f) << shift);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid varint");
+    }
+
+    /**
+     * write a varint length prefixed utf-8 string
+     */
+    public static void writeString(OutputStream out, String str) throws IOException {
+        byte[] data = str.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, data.length);
+        out.write(data);
+    }
+
+    /**
+     * read a varint length prefixed utf-8 string
+     */
+    public static String readString(DataInputStream in) throws IOException {
+        byte[] data = new byte[readVarInt(in)];
+        in.readFully(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+}
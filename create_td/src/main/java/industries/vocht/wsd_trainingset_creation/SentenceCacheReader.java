@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * read the sentences of a sentence cache file (see SentenceCache for the format)
+ *
+ */
+public class SentenceCacheReader implements SentenceReader {
+
+    private DataInputStream in;
+
+    // the tags in order of their ids (in this file)
+    private List<PennTag> tagList;
+
+    // the number of sentences read so far
+    private long position;
+
+    // false if the file doesn't start with the right magic / version
+    private boolean valid;
+
+    /**
+     * open a cache file
+     * @param filename the cache file
+     * @throws IOException file error
+     */
+    public SentenceCacheReader(String filename) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), SentenceCache.BUFFER_SIZE));
+        this.tagList = new ArrayList<>();
+        try {
+            this.valid = in.readInt() == SentenceCache.MAGIC && in.readInt() == SentenceCache.VERSION;
+        } catch (EOFException ex) {
+            this.valid = false;
+        }
+    }
+
+    /**
+     * @return true if this file can be read by this version
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public Sentence next() throws IOException {
+        int size = SentenceCache.readVarInt(in);
+        if (size == 0) {
+            return null; // end marker
+        }
+        int fullSize = SentenceCache.readVarInt(in);
+        Sentence sentence = new Sentence(size - 1, (size - 1) * 4);
+        int[] positionArray = (fullSize > 0) ? new int[size - 1] : null;
+        int previous = -1;
+        for (int i = 1; i < size; i++) {
+            String text = SentenceCache.readString(in);
+            int tagId = SentenceCache.readVarInt(in);
+            if (tagId == tagList.size()) {
+                tagList.add(PennTag.fromTag(SentenceCache.readString(in)));
+            } else if (tagId > tagList.size()) {
+                throw new IOException("invalid tag id " + tagId);
+            }
+            sentence.add(text, tagList.get(tagId));
+            if (positionArray != null) {
+                previous = previous + SentenceCache.readVarInt(in) + 1;
+                positionArray[i - 1] = previous;
+            }
+        }
+        position = position + 1;
+        if (positionArray != null) {
+            sentence.setPositions(positionArray, fullSize);
+        }
+        return sentence;
+    }
+
+    /**
+     * @return the number of sentences read so far
+     */
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * skip sentences (these still have to be read, the cache has no index)
+     * @param position the number of sentences to skip
+     */
+    @Override
+    public void skip(long position) throws IOException {
+        while (this.position < position) {
+            if (next() == null) {
+                throw new IOException("sentence " + position + " past the end of the cache file");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
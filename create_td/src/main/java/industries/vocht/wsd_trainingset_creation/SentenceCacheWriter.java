@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * write the tagged sentences of an input file to a sentence cache file (see SentenceCache for the format)
+ *
+ * the chunks of a file are tagged by several threads and arrive in any order, the reader
+ * counts the chunks it sends (addChunk / readDone).  The chunks are written in the order of the
+ * file (by their sequence number), a chunk that arrives early waits for the ones before it, so that
+ * a run from the cache sees the sentences in the same order as a run without it.
+ * The file is renamed into the cache once all its chunks are written.
+ * A file with a chunk that failed to tag is abandoned and not cached
+ *
+ */
+public class SentenceCacheWriter {
+
+    private SentenceCache cache;
+
+    // the final name, and the temporary name while writing
+    private String filename;
+    private String tempFilename;
+
+    private DataOutputStream out;
+
+    // the ids of the tags seen so far
+    private Map<PennTag, Integer> tagMap;
+
+    // chunks sent by the reader and not written yet
+    private int pending;
+
+    // the sequence number of the next chunk to write, and the chunks that arrived before it
+    private int nextSequence;
+    private Map<Integer, List<Sentence>> waitingMap;
+
+    // the reader has sent all chunks of the file
+    private boolean readDone;
+
+    // complete or abandoned
+    private boolean closed;
+
+    SentenceCacheWriter(SentenceCache cache, String filename) throws IOException {
+        this.cache = cache;
+        this.filename = filename;
+        this.tempFilename = filename + ".tmp";
+        this.tagMap = new EnumMap<>(PennTag.class);
+        this.waitingMap = new HashMap<>();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFilename), SentenceCache.BUFFER_SIZE));
+        out.writeInt(SentenceCache.MAGIC);
+        out.writeInt(SentenceCache.VERSION);
+    }
+
+    /**
+     * the reader is about to send another chunk of this file
+     */
+    public synchronized void addChunk() {
+        pending = pending + 1;
+    }
+
+    /**
+     * the reader has sent the last chunk of this file
+     * @throws IOException file error
+     */
+    public synchronized void readDone() throws IOException {
+        readDone = true;
+        finishIfComplete();
+    }
+
+    /**
+     * write the tagged sentences of a chunk, once all the chunks before it are written
+     * @param sequence the sequence number of the chunk in its file (0, 1, ...)
+     * @param sentenceList the tagged sentences
+     * @throws IOException file error
+     */
+    public synchronized void write(int sequence, List<Sentence> sentenceList) throws IOException {
+        if (closed) {
+            return;
+        }
+        waitingMap.put(sequence, sentenceList);
+        try {
+            List<Sentence> next;
+            while ((next = waitingMap.remove(nextSequence)) != null) {
+                writeSentences(next);
+                nextSequence = nextSequence + 1;
+                pending = pending - 1;
+            }
+        } catch (IOException ex) {
+            abandon();
+            throw ex;
+        }
+        finishIfComplete();
+    }
+
+    /**
+     * write tagged sentences to the file
+     */
+    private void writeSentences(List<Sentence> sentenceList) throws IOException {
+        for (Sentence sentence : sentenceList) {
+            SentenceCache.writeVarInt(out, sentence.size() + 1);
+            SentenceCache.writeVarInt(out, sentence.isCompact() ? sentence.getFullSize() : 0);
+            int previous = -1;
+            for (int i = 0; i < sentence.size(); i++) {
+                PennTag tag = sentence.getTag(i);
+                SentenceCache.writeString(out, sentence.getText(i));
+                Integer tagId = tagMap.get(tag);
+                if (tagId == null) {
+                    SentenceCache.writeVarInt(out, tagMap.size());
+                    SentenceCache.writeString(out, tag.getTag());
+                    tagMap.put(tag, tagMap.size());
+                } else {
+                    SentenceCache.writeVarInt(out, tagId);
+                }
+                if (sentence.isCompact()) {
+                    SentenceCache.writeVarInt(out, sentence.getPosition(i) - previous - 1);
+                    previous = sentence.getPosition(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * give up on this file, it isn't added to the cache
+     */
+    public synchronized void abandon() {
+        if (!closed) {
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException ex) {
+                System.out.println("error closing " + tempFilename + ":" + ex.toString());
+            }
+            new File(tempFilename).delete();
+            waitingMap.clear();
+            cache.remove(this);
+        }
+    }
+
+    /**
+     * close the file and move it into the cache once all chunks are written
+     */
+    private void finishIfComplete() throws IOException {
+        if (!closed && readDone && pending == 0) {
+            closed = true;
+            cache.remove(this);
+            SentenceCache.writeVarInt(out, 0);
+            out.close();
+            Files.move(Paths.get(tempFilename), Paths.get(filename),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * a source of already tagged sentences (a pre-parsed file, the sentence cache)
+ * that can be continued from a position (after a restart of step 1)
+ *
+ */
+public interface SentenceReader extends Closeable {
+
+    /**
+     * @return the next sentence, or null if there are no more
+     * @throws IOException file error
+     */
+    Sentence next() throws IOException;
+
+    /**
+     * @return the position of the next sentence, for continuing from later (see skip())
+     */
+    long getPosition();
+
+    /**
+     * continue reading at a position returned by getPosition() of an earlier reader of the same file
+     * must be called before the first next()
+     * @param position the position to continue from
+     * @throws IOException file error
+     */
+    void skip(long position) throws IOException;
+
+}
@@ -48,5 +48,20 @@ public class Settings {
         return store.get(key);
     }
 
+    /**
+     * return a value from the store by its key, or a default if it isn't set
+     *
+     * @param key the key
+     * @param defaultValue the value to return if key dne (for older wsd.properties files)
+     * @return defaultValue if dne, otherwise the value associated with key
+     */
+    public String getValueByKey(String key, String defaultValue) {
+        String value = store.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        return value;
+    }
+
 }
 
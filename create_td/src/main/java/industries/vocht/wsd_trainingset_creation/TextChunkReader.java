@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * read a (very large) text file a chunk at a time, instead of loading all of it into memory.
+ * chunks are cut at paragraph boundaries (an empty line) where possible, otherwise at the end of
+ * a sentence, otherwise at white-space, so that the sentence boundary detector sees
+ * (nearly) the same text it would have seen for the whole file.  Memory use depends on
+ * the chunk size, not the size of the file.
+ *
+ */
+public class TextChunkReader implements Closeable {
+
+    // the stream we're reading from
+    private InputStream in;
+
+    // the character set of the bytes in the stream
+    private Charset charset;
+
+    // the maximum size of a chunk in bytes
+    private int chunkSize;
+
+    // the bytes read from the stream, valid from start to end
+    private byte[] buffer;
+    private int start;
+    private int end;
+
+    // set once the stream has no more data
+    private boolean eof;
+
+    // the offset in the stream of the next chunk
+    private long position;
+
+    // optional: chunks without a focus word are skipped
+    private FocusScanner filter;
+
+    /**
+     * create a new chunk reader
+     * @param in the stream to read from, closed by close()
+     * @param chunkSize the maximum size of each chunk in bytes
+     */
+    public TextChunkReader(InputStream in, int chunkSize) {
+        this(in, chunkSize, Charset.defaultCharset());
+    }
+
+    /**
+     * create a new chunk reader
+     * @param in the stream to read from, closed by close()
+     * @param chunkSize the maximum size of each chunk in bytes
+     * @param charset the character set of the stream
+     */
+    public TextChunkReader(InputStream in, int chunkSize, Charset charset) {
+        this.in = in;
+        this.charset = charset;
+        this.chunkSize = Math.max(chunkSize, 1024);
+        // a few bytes extra so a hard cut can see whether the next byte continues a character
+        this.buffer = new byte[this.chunkSize + 4];
+        this.start = 0;
+        this.end = 0;
+        this.eof = false;
+    }
+
+    /**
+     * read the next chunk of text (that has a focus word, if filtered)
+     * @return the text of the next chunk, or null if there is no more
+     * @throws IOException read error
+     */
+    public String next() throws IOException {
+        while (true) {
+            fill();
+            if (start >= end) {
+                return null;
+            }
+            int cut = end;
+            if (!eof || end - start > chunkSize) {
+                cut = findBoundary(start, Math.min(end, start + chunkSize));
+            }
+            int size = cut - start;
+            String text = null;
+            boolean keep = true;
+            if (filter != null) {
+                // check the bytes before decoding them (if the character set allows)
+                if (isAsciiCompatible()) {
+                    keep = filter.find(buffer, start, cut);
+                } else {
+                    text = new String(buffer, start, size, charset);
+                    keep = filter.find(text);
+                }
+                filter.count(size, !keep);
+            }
+            if (keep && text == null) {
+                text = new String(buffer, start, size, charset);
+            }
+            position = position + size;
+            start = cut;
+            if (keep) {
+                return text;
+            }
+        }
+    }
+
+    /**
+     * skip the chunks that can't contain any of the focus words
+     * @param filter the focus word scanner, null for no filter
+     */
+    public void setFilter(FocusScanner filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return the offset in the stream of the next chunk (the bytes of all chunks returned so far)
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * continue reading at an offset returned by getPosition() of an earlier reader of the same stream
+     * must be called before the first next()
+     * @param offset the offset in the stream
+     * @throws IOException read error
+     */
+    public void skip(long offset) throws IOException {
+        while (position < offset) {
+            long skipped = in.skip(offset - position);
+            if (skipped <= 0) {
+                throw new IOException("offset " + offset + " past the end of the stream");
+            }
+            position = position + skipped;
+        }
+    }
+
+    /**
+     * fill the buffer (unless the stream ends first)
+     */
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end = end - start;
+            start = 0;
+        }
+        while (!eof && end < buffer.length) {
+            int numRead = in.read(buffer, end, buffer.length - end);
+            if (numRead < 0) {
+                eof = true;
+            } else {
+                end = end + numRead;
+            }
+        }
+    }
+
+    /**
+     * find the best place to cut the buffer between from and limit, looking back from limit,
+     * but not further back than half a chunk
+     * @param from the start of the chunk
+     * @param limit the end of the chunk at its largest
+     * @return the offset just after the boundary (exclusive end of the chunk)
+     */
+    private int findBoundary(int from, int limit) {
+        int lowest = from + (limit - from) / 2;
+
+        // paragraph (empty line)
+        for (int i = limit - 1; i > lowest; i--) {
+            if (buffer[i] == '\n' && (buffer[i - 1] == '\n' || (buffer[i - 1] == '\r' && i - 2 >= from && buffer[i - 2] == '\n'))) {
+                return i + 1;
+            }
+        }
+        // end of a sentence followed by white-space
+        for (int i = limit - 1; i > lowest; i--) {
+            if (isSpace(buffer[i]) && (buffer[i - 1] == '.' || buffer[i - 1] == '!' || buffer[i - 1] == '?')) {
+                return i + 1;
+            }
+        }
+        // any white-space
+        for (int i = limit - 1; i > lowest; i--) {
+            if (isSpace(buffer[i])) {
+                return i + 1;
+            }
+        }
+        // hard cut, but never in the middle of a multi-byte utf-8 character
+        int cut = limit;
+        while (cut > from + 1 && cut < end && (buffer[cut] & 0xc0) == 0x80) {
+            cut--;
+        }
+        return cut;
+    }
+
+    // true if ascii characters are single bytes with the same values
+    private boolean isAsciiCompatible() {
+        return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII) ||
+               charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * the tokens of a piece of text as offsets into its characters, filled in by the Tokenizer.
+ * No objects are created per token, the text of a token is only turned into a String
+ * (or a Token) when it is needed.  An instance is re-used for every sentence of a thread
+ *
+ */
+public class TokenOffsets {
+
+    // single character strings for the ascii characters, so punctuation doesn't need a new String
+    private static final String[] asciiStrings = new String[128];
+
+    static {
+        for (int i = 0; i < asciiStrings.length; i++) {
+            asciiStrings[i] = Character.toString((char)i);
+        }
+    }
+
+    // the characters the tokens are in
+    private char[] source;
+
+    // the number of tokens
+    private int size;
+
+    // the start (inclusive) and end (exclusive) offset of each token, and its kind (TokenizerConstants.CC_ class)
+    private int[] start;
+    private int[] end;
+    private short[] kind;
+
+    public TokenOffsets() {
+        this(256);
+    }
+
+    /**
+     * @param capacity the initial number of tokens
+     */
+    public TokenOffsets(int capacity) {
+        capacity = Math.max(capacity, 16);
+        this.start = new int[capacity];
+        this.end = new int[capacity];
+        this.kind = new short[capacity];
+    }
+
+    /**
+     * set the characters to tokenize, a copy of text in the re-used buffer
+     * @param text the text
+     * @return the characters (valid up to text.length())
+     */
+    public char[] setSource(String text) {
+        if (source == null || source.length < text.length()) {
+            source = new char[text.length() * 2];
+        }
+        text.getChars(0, text.length(), source, 0);
+        size = 0;
+        return source;
+    }
+
+    /**
+     * start on the tokens of other characters
+     * @param source the characters
+     */
+    public void reset(char[] source) {
+        this.source = source;
+        this.size = 0;
+    }
+
+    /**
+     * add a token
+     * @param tokenStart the offset of its first character
+     * @param tokenEnd the offset after its last character
+     * @param tokenKind the character class that made the token
+     */
+    public void add(int tokenStart, int tokenEnd, int tokenKind) {
+        if (size == start.length) {
+            int capacity = size * 2;
+            start = Arrays.copyOf(start, capacity);
+            end = Arrays.copyOf(end, capacity);
+            kind = Arrays.copyOf(kind, capacity);
+        }
+        start[size] = tokenStart;
+        end[size] = tokenEnd;
+        kind[size] = (short)tokenKind;
+        size = size + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public char[] getSource() {
+        return source;
+    }
+
+    public int getStart(int index) {
+        return start[index];
+    }
+
+    public int getEnd(int index) {
+        return end[index];
+    }
+
+    public int getKind(int index) {
+        return kind[index];
+    }
+
+    /**
+     * @return the text of a token, the same text the Tokenizer always gave its Tokens
+     * (white-space, full-stops, hyphens and quotes have a single standard form)
+     */
+    public String getText(int index) {
+        switch (kind[index]) {
+            case TokenizerConstants.CC_WHITESPACE: return " ";
+            case TokenizerConstants.CC_FULL_STOP: return ".";
+            case TokenizerConstants.CC_HYPHEN: return "-";
+            case TokenizerConstants.CC_SINGLE_QUOTE: return "'";
+            case TokenizerConstants.CC_DOUBLE_QUOTE: return "\"";
+            case TokenizerConstants.CC_SPECIAL:
+            case TokenizerConstants.CC_PUNCTUATION: {
+                char ch = source[start[index]];
+                return ch < 128 ? asciiStrings[ch] : Character.toString(ch);
+            }
+            default:
+                return new String(source, start[index], end[index] - start[index]);
+        }
+    }
+
+    /**
+     * @return the same as Token.isText() for the token (no numbers, full-stops or commas)
+     */
+    public boolean isText(int index) {
+        int tokenKind = kind[index];
+        return tokenKind != TokenizerConstants.CC_NUMERIC && tokenKind != TokenizerConstants.CC_FULL_STOP &&
+               !(tokenKind == TokenizerConstants.CC_PUNCTUATION && source[start[index]] == ',');
+    }
+
+    /**
+     * @param focus the focus words
+     * @return true if any of the text tokens is a focus word (ignoring case)
+     */
+    public boolean hasFocusWord(FocusMatcher focus) {
+        for (int i = 0; i < size; i++) {
+            if (kind[i] == TokenizerConstants.CC_ABC && focus.contains(source, start[i], end[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param compact leave out the white-space tokens (they never appear in a window)
+     * @return the tokens as a sentence
+     */
+    public Sentence toSentence(boolean compact) {
+        Sentence sentence = new Sentence(size, size == 0 ? 0 : end[size - 1] - start[0]);
+        int[] positionArray = compact ? new int[size] : null;
+        for (int i = 0; i < size; i++) {
+            int tokenKind = kind[i];
+            if (compact) {
+                if (tokenKind == TokenizerConstants.CC_WHITESPACE) {
+                    continue;
+                }
+                positionArray[sentence.size()] = i;
+            }
+            if (tokenKind == TokenizerConstants.CC_ABC || tokenKind == TokenizerConstants.CC_NUMERIC ||
+                    tokenKind == TokenizerConstants.CC_SPECIAL || tokenKind == TokenizerConstants.CC_PUNCTUATION) {
+                sentence.add(source, start[i], end[i], PennTag.UNC);
+            } else {
+                sentence.add(getText(i), PennTag.UNC); // a standard form
+            }
+        }
+        if (compact) {
+            sentence.setPositions(Arrays.copyOf(positionArray, sentence.size()), size);
+        }
+        return sentence;
+    }
+
+    /**
+     * @return all the tokens as Tokens
+     */
+    public List<Token> toTokenList() {
+        List<Token> tokenList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokenList.add(new Token(getText(i)));
+        }
+        return tokenList;
+    }
+
+}
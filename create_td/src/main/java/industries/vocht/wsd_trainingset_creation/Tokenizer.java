@@ -11,7 +11,6 @@
 
 package industries.vocht.wsd_trainingset_creation;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /*
@@ -32,110 +31,127 @@ public class Tokenizer extends TokenizerConstants {
      */
     public List<Token> tokenize(String str ) {
         if ( str != null && str.length() > 0 ) {
-            List<Token> tokenList = new ArrayList<>();
+            char[] chArray = str.toCharArray();
+            TokenOffsets tokenOffsets = new TokenOffsets(chArray.length / 2);
+            tokenize(chArray, chArray.length, tokenOffsets);
 
-            StringBuilder helper = new StringBuilder();
+            // return the list if we have something
+            if ( tokenOffsets.size() > 0 )
+                return tokenOffsets.toTokenList();
+        }
+        return null;
+    }
 
-            char[] chArray = str.toCharArray();
-            int length = chArray.length;
-
-            int i = 0;
-            while ( i < length ) {
-                boolean tokenHandled = false;
-
-                // whitespace scanner
-                char ch = chArray[i];
-                while ( isWhiteSpace(ch) && i < length ) {
-                    tokenHandled = true;
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-
-                if ( tokenHandled )
-                    tokenList.add( new Token(" ") );
-
-                // add full-stops?
-                while ( isFullStop(ch) && i < length ) {
-                    tokenHandled = true;
-                    tokenList.add(new Token("."));
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-
-                // add hyphens?
-                while ( isHyphen(ch) && i < length ) {
-                    tokenHandled = true;
-                    tokenList.add(new Token("-"));
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-
-                // add single quotes?
-                while ( isSingleQuote(ch) && i < length ) {
-                    tokenHandled = true;
-                    tokenList.add(new Token("'"));
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-
-                // add single quotes?
-                while ( isDoubleQuote(ch) && i < length ) {
-                    tokenHandled = true;
-                    tokenList.add(new Token("\""));
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-
-                // add special characters ( ) etc.
-                while ( isSpecialCharacter(ch) && i < length ) {
-                    tokenHandled = true;
-                    tokenList.add(new Token( Character.toString(ch) ));
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-
-                // add punctuation ! ? etc.
-                while ( isPunctuation(ch) && i < length ) {
-                    tokenHandled = true;
-                    tokenList.add(new Token( Character.toString(ch) ));
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-
-                // numeric processor
-                helper.setLength(0);
-                while ( isNumeric(ch) && i < length ) {
-                    tokenHandled = true;
-                    helper.append(ch);
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-                if ( helper.length() > 0 )
-                    tokenList.add( new Token(helper.toString()) );
-
-                // text processor
-                helper.setLength(0);
-                while ( isABC(ch) && i < length ) {
-                    tokenHandled = true;
-                    helper.append(ch);
-                    i = i + 1;
-                    if ( i < length ) ch = chArray[i];
-                }
-                if ( helper.length() > 0 )
-                    tokenList.add( new Token(helper.toString()) );
-
-                // discard unknown token?
-                if ( !tokenHandled ) {
-                    i++; // skip
-                }
+    /**
+     * take a string apart into tokens, without creating any objects
+     * @param str the string to take apart
+     * @param tokenOffsets the tokens (re-used, the string is copied into its buffer)
+     */
+    public void tokenize(String str, TokenOffsets tokenOffsets ) {
+        char[] chArray = tokenOffsets.setSource(str);
+        tokenize(chArray, str.length(), tokenOffsets);
+    }
 
+    /**
+     * take characters apart into tokens, the tokens are offsets into chArray
+     *
+     * @param chArray the characters to take apart
+     * @param length the number of characters
+     * @param tokenOffsets the tokens
+     */
+    public void tokenize( char[] chArray, int length, TokenOffsets tokenOffsets ) {
+        tokenOffsets.reset(chArray);
+
+        int i = 0;
+        while ( i < length ) {
+            boolean tokenHandled = false;
+            int start = i;
+
+            // whitespace scanner
+            int charClass = getCharClass(chArray[i]);
+            while ( (charClass & CC_WHITESPACE) != 0 && i < length ) {
+                tokenHandled = true;
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+
+            if ( tokenHandled )
+                tokenOffsets.add(start, i, CC_WHITESPACE);
+
+            // add full-stops?
+            while ( (charClass & CC_FULL_STOP) != 0 && i < length ) {
+                tokenHandled = true;
+                tokenOffsets.add(i, i + 1, CC_FULL_STOP);
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+
+            // add hyphens?
+            while ( (charClass & CC_HYPHEN) != 0 && i < length ) {
+                tokenHandled = true;
+                tokenOffsets.add(i, i + 1, CC_HYPHEN);
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+
+            // add single quotes?
+            while ( (charClass & CC_SINGLE_QUOTE) != 0 && i < length ) {
+                tokenHandled = true;
+                tokenOffsets.add(i, i + 1, CC_SINGLE_QUOTE);
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+
+            // add double quotes? (a quote that is both continues a run of double quotes)
+            while ( (charClass & CC_DOUBLE_QUOTE) != 0 && i < length ) {
+                tokenHandled = true;
+                tokenOffsets.add(i, i + 1, CC_DOUBLE_QUOTE);
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+
+            // add special characters ( ) etc.
+            while ( (charClass & CC_SPECIAL) != 0 && i < length ) {
+                tokenHandled = true;
+                tokenOffsets.add(i, i + 1, CC_SPECIAL);
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+
+            // add punctuation ! ? etc.
+            while ( (charClass & CC_PUNCTUATION) != 0 && i < length ) {
+                tokenHandled = true;
+                tokenOffsets.add(i, i + 1, CC_PUNCTUATION);
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+
+            // numeric processor
+            start = i;
+            while ( (charClass & CC_NUMERIC) != 0 && i < length ) {
+                tokenHandled = true;
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+            if ( i > start )
+                tokenOffsets.add(start, i, CC_NUMERIC);
+
+            // text processor
+            start = i;
+            while ( (charClass & CC_ABC) != 0 && i < length ) {
+                tokenHandled = true;
+                i = i + 1;
+                if ( i < length ) charClass = getCharClass(chArray[i]);
+            }
+            if ( i > start )
+                tokenOffsets.add(start, i, CC_ABC);
+
+            // discard unknown token?
+            if ( !tokenHandled ) {
+                i++; // skip
             }
 
-            // return the list if we have something
-            if ( tokenList.size() > 0 )
-                return tokenList;
         }
-        return null;
     }
 
 
@@ -13,7 +13,6 @@ package industries.vocht.wsd_trainingset_creation;
 
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 
 /*
@@ -70,12 +69,17 @@ public class TokenizerConstants {
 
     // return true if ch is a unicode letter a..z A..Z
     public static boolean isABC( char ch ) {
-        return azLookup.contains(ch);
+        return (charClass[ch] & CC_ABC) != 0;
     }
 
     // return true if ch is a special character, all the other allowed characters like ? ! [ ] ( ) etc.
     protected static boolean isSpecialCharacter( char ch ) {
-        return specialCharacterLookup.contains(ch);
+        return (charClass[ch] & CC_SPECIAL) != 0;
+    }
+
+    // return the character classes of ch (CC_ flags)
+    public static int getCharClass( char ch ) {
+        return charClass[ch];
     }
 
     // return true if ch is a white space character
@@ -86,9 +90,19 @@ public class TokenizerConstants {
                ch == '\u2008' || ch == '\u2009' || ch == '\u200a' || ch == '\u200b';
     }
 
-    // fast lookup tables
-    private static HashSet<Character> azLookup = null;
-    private static HashSet<Character> specialCharacterLookup = null;
+    // character classes, flags of the charClass table
+    public static final int CC_WHITESPACE = 0x001;
+    public static final int CC_FULL_STOP = 0x002;
+    public static final int CC_HYPHEN = 0x004;
+    public static final int CC_SINGLE_QUOTE = 0x008;
+    public static final int CC_DOUBLE_QUOTE = 0x010;
+    public static final int CC_SPECIAL = 0x020;
+    public static final int CC_PUNCTUATION = 0x040;
+    public static final int CC_NUMERIC = 0x080;
+    public static final int CC_ABC = 0x100;
+
+    // fast lookup table, the classes of every char (a primitive table, no boxing of characters)
+    private static final short[] charClass = new short[65536];
 
     private static String[] extraAZ_a = new String[]
             {
@@ -143,27 +157,25 @@ public class TokenizerConstants {
 
     static
     {
-        azLookup = new HashSet<>( 200 );
         for ( char ch = 'a'; ch <= 'z'; ch++ )
-            azLookup.add( ch );
+            charClass[ch] |= CC_ABC;
         for ( char ch = 'A'; ch <= 'Z'; ch++ )
-            azLookup.add( ch );
-        for ( String str : extraAZ_a )
-            azLookup.add( str.toCharArray()[0] );
-        for ( String str : extraAZ_c )
-            azLookup.add( str.toCharArray()[0] );
-        for ( String str : extraAZ_e )
-            azLookup.add( str.toCharArray()[0] );
-        for ( String str : extraAZ_i )
-            azLookup.add( str.toCharArray()[0] );
-        for ( String str : extraAZ_o )
-            azLookup.add( str.toCharArray()[0] );
-        for ( String str : extraAZ_u )
-            azLookup.add( str.toCharArray()[0] );
-
-        specialCharacterLookup = new HashSet<>();
-        for ( char ch : specialCharacters ) {
-            specialCharacterLookup.add(ch);
+            charClass[ch] |= CC_ABC;
+        for ( String[] extraAZ : new String[][] { extraAZ_a, extraAZ_c, extraAZ_e, extraAZ_i, extraAZ_o, extraAZ_u } )
+            for ( String str : extraAZ )
+                charClass[str.toCharArray()[0]] |= CC_ABC;
+        for ( char ch : specialCharacters )
+            charClass[ch] |= CC_SPECIAL;
+
+        for ( int i = 0; i < charClass.length; i++ ) {
+            char ch = (char)i;
+            if ( isWhiteSpace(ch) ) charClass[i] |= CC_WHITESPACE;
+            if ( isFullStop(ch) ) charClass[i] |= CC_FULL_STOP;
+            if ( isHyphen(ch) ) charClass[i] |= CC_HYPHEN;
+            if ( isSingleQuote(ch) ) charClass[i] |= CC_SINGLE_QUOTE;
+            if ( isDoubleQuote(ch) ) charClass[i] |= CC_DOUBLE_QUOTE;
+            if ( isPunctuation(ch) ) charClass[i] |= CC_PUNCTUATION;
+            if ( isNumeric(ch) ) charClass[i] |= CC_NUMERIC;
         }
     }
 
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * convert the unlabelled files of a directory between the csv and the binary format,
+ * the words of the binary files are added to the vocabulary of the directory.
+ * The original files are kept, step 2 reads the binary file of a word if it has one
+ *
+ */
+public class UnlabelledConverter {
+
+    private static final String CSV_SUFFIX = "-trainingset.csv";
+    private static final String BINARY_SUFFIX = "-trainingset.bin";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || (!args[0].equals("csv2bin") && !args[0].equals("bin2csv"))) {
+            System.out.println("Convert unlabelled training set files");
+            System.out.println("usage: csv2bin|bin2csv /path/to/unlabelled [word ...]");
+            System.exit(1);
+        }
+        String directory = args[1].endsWith("/") ? args[1] : args[1] + "/";
+        boolean toBinary = args[0].equals("csv2bin");
+
+        // the words to convert, all files of the other format if none are given
+        List<String> wordList = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            wordList.add(args[i]);
+        }
+        if (wordList.isEmpty()) {
+            String suffix = toBinary ? CSV_SUFFIX : BINARY_SUFFIX;
+            File[] fileList = new File(directory).listFiles();
+            if (fileList != null) {
+                for (File file : fileList) {
+                    if (file.getName().endsWith(suffix)) {
+                        wordList.add(file.getName().substring(0, file.getName().length() - suffix.length()));
+                    }
+                }
+            }
+        }
+
+        Vocabulary vocabulary = Vocabulary.open(directory);
+        for (String word : wordList) {
+            String csvFilename = UnlabelledWriter.outputFilename(directory, word, false);
+            String binaryFilename = UnlabelledWriter.outputFilename(directory, word, true);
+            if (toBinary) {
+                toBinary(csvFilename, binaryFilename, vocabulary);
+            } else {
+                toCsv(binaryFilename, csvFilename, vocabulary);
+            }
+            System.out.println(word + ": " + new File(csvFilename).length() + " bytes csv, " +
+                               new File(binaryFilename).length() + " bytes binary");
+        }
+    }
+
+    /**
+     * convert a csv file to the binary format
+     * @param csvFilename the csv file
+     * @param binaryFilename the binary file to write (replaced)
+     * @param vocabulary the vocabulary of the binary file, the new words are saved to it
+     * @throws IOException file error
+     */
+    public static void toBinary(String csvFilename, String binaryFilename, Vocabulary vocabulary) throws IOException {
+        String tempFilename = binaryFilename + ".tmp";
+        try (UnlabelledReader reader = UnlabelledReader.openCsv(csvFilename);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFilename), 1024 * 1024))) {
+            out.writeInt(UnlabelledWriter.MAGIC);
+            out.writeInt(UnlabelledWriter.VERSION);
+            for (String[] parts; (parts = reader.next()) != null; ) {
+                if (parts.length > 0) {
+                    SentenceCache.writeVarInt(out, parts.length);
+                    for (String part : parts) {
+                        SentenceCache.writeVarInt(out, vocabulary.getId(part));
+                    }
+                }
+            }
+        }
+        // the ids must be in the vocabulary before the file can be read
+        vocabulary.save();
+        Files.move(Paths.get(tempFilename), Paths.get(binaryFilename),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * convert a binary file to the csv format
+     * @param binaryFilename the binary file
+     * @param csvFilename the csv file to write (replaced)
+     * @param vocabulary the vocabulary of the binary file
+     * @throws IOException file error
+     */
+    public static void toCsv(String binaryFilename, String csvFilename, Vocabulary vocabulary) throws IOException {
+        String tempFilename = csvFilename + ".tmp";
+        try (UnlabelledReader reader = UnlabelledReader.openBinary(binaryFilename, vocabulary);
+             Writer writer = new BufferedWriter(new FileWriter(tempFilename), 1024 * 1024)) {
+            StringBuilder sb = new StringBuilder();
+            for (String[] parts; (parts = reader.next()) != null; ) {
+                sb.setLength(0);
+                for (int i = 0; i < parts.length; i++) {
+                    if (i > 0) {
+                        sb.append(",");
+                    }
+                    sb.append(parts[i]);
+                }
+                writer.write(sb.append("\n").toString());
+            }
+        }
+        Files.move(Paths.get(tempFilename), Paths.get(csvFilename),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+
+/**
+ * read the windows of an unlabelled file one at a time, as the parts of a csv line,
+ * from either the csv or the binary format (see UnlabelledWriter).  The words of a binary
+ * file are the (shared) Strings of the vocabulary, so there is nothing to split or copy
+ *
+ */
+public class UnlabelledReader implements Closeable {
+
+    // one of the two is set
+    private BufferedReader csvReader;
+    private DataInputStream binaryIn;
+
+    // the words of the ids in a binary file
+    private Vocabulary vocabulary;
+    private int vocabularySize;
+
+    /**
+     * open the unlabelled file of a word, the binary file if there is one, otherwise the csv file
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     * @param word the word
+     * @param vocabulary the words of the ids in the binary file
+     * @return the reader
+     * @throws IOException file error, or not a binary unlabelled file
+     */
+    public static UnlabelledReader open(String nnetUnlabelledDirectory, String word, Vocabulary vocabulary) throws IOException {
+        String filename = UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, true);
+        if (new File(filename).exists()) {
+            return openBinary(filename, vocabulary);
+        }
+        return openCsv(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, false));
+    }
+
+    /**
+     * @param filename a csv file (one window per line, words separated by commas)
+     * @return the reader
+     * @throws IOException file error
+     */
+    public static UnlabelledReader openCsv(String filename) throws IOException {
+        UnlabelledReader reader = new UnlabelledReader();
+        reader.csvReader = new BufferedReader(new FileReader(filename));
+        return reader;
+    }
+
+    /**
+     * @param filename a binary unlabelled file
+     * @param vocabulary the words of its ids
+     * @return the reader
+     * @throws IOException file error, or not a binary unlabelled file
+     */
+    public static UnlabelledReader openBinary(String filename, Vocabulary vocabulary) throws IOException {
+        UnlabelledReader reader = new UnlabelledReader();
+        reader.vocabulary = vocabulary;
+        reader.vocabularySize = vocabulary.size();
+        reader.binaryIn = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1024 * 1024));
+        try {
+            if (reader.binaryIn.readInt() != UnlabelledWriter.MAGIC || reader.binaryIn.readInt() != UnlabelledWriter.VERSION) {
+                reader.close();
+                throw new IOException(filename + " is not a binary unlabelled file (of this version)");
+            }
+        } catch (EOFException ex) {
+            reader.close();
+            throw new IOException(filename + " is not a binary unlabelled file");
+        }
+        return reader;
+    }
+
+    /**
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     * @param word the word
+     * @return true if the word has an unlabelled file with at least one window in it
+     */
+    public static boolean hasWindows(String nnetUnlabelledDirectory, String word) {
+        File binaryFile = new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, true));
+        if (binaryFile.exists()) {
+            return binaryFile.length() > UnlabelledWriter.HEADER_SIZE;
+        }
+        File csvFile = new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, false));
+        return csvFile.exists() && csvFile.length() > 0;
+    }
+
+    /**
+     * an estimate of the memory the windows of a word take once read (see WindowCorpus), about the size
+     * of its csv file.  A binary file has about a quarter of the bytes of the same csv file
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     * @param word the word
+     * @return the estimated size in bytes, 0 if the word has no unlabelled file
+     */
+    public static long getMemorySize(String nnetUnlabelledDirectory, String word) {
+        File binaryFile = new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, true));
+        if (binaryFile.exists()) {
+            return binaryFile.length() * 4;
+        }
+        return new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, false)).length();
+    }
+
+    /**
+     * @param nnetUnlabelledDirectory the unlabelled directory
+     * @param word the word
+     * @return true if the word has an unlabelled file (in either format)
+     */
+    public static boolean exists(String nnetUnlabelledDirectory, String word) {
+        return new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, true)).exists() ||
+               new File(UnlabelledWriter.outputFilename(nnetUnlabelledDirectory, word, false)).exists();
+    }
+
+    /**
+     * read the next window, empty lines are skipped
+     * @return the words of the window (the same as line.split(",")), null at the end of the file
+     * @throws IOException file error
+     */
+    public String[] next() throws IOException {
+        if (csvReader != null) {
+            String line;
+            while ((line = csvReader.readLine()) != null) {
+                if (line.length() > 0) {
+                    return line.split(",");
+                }
+            }
+            return null;
+        }
+        int[] ids = nextBinary();
+        if (ids == null) {
+            return null;
+        }
+        String[] parts = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            parts[i] = vocabulary.getWord(ids[i]);
+        }
+        return parts;
+    }
+
+    /**
+     * read the next window as the ids of its words, empty lines are skipped
+     * @param vocabulary the ids of the words, the vocabulary of a binary file (the words of a csv file
+     *                   are added to it)
+     * @return the ids of the words of the window, null at the end of the file
+     * @throws IOException file error
+     */
+    public int[] nextIds(Vocabulary vocabulary) throws IOException {
+        if (csvReader != null) {
+            String[] parts = next();
+            if (parts == null) {
+                return null;
+            }
+            int[] ids = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                ids[i] = vocabulary.getId(parts[i]);
+            }
+            return ids;
+        }
+        return nextBinary();
+    }
+
+    // the ids of the next window of a binary file
+    private int[] nextBinary() throws IOException {
+        int count;
+        do {
+            int b = binaryIn.read();
+            if (b < 0) {
+                return null;
+            }
+            count = readVarInt(b);
+        } while (count == 0);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            int id = SentenceCache.readVarInt(binaryIn);
+            if (id >= vocabularySize) {
+                throw new IOException("word id " + id + " not in the vocabulary");
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    // the rest of a varint that starts with b
+    private int readVarInt(int b) throws IOException {
+        if ((b & 0x80) == 0) {
+            return b;
+        }
+        return (b & 0x7f) | (SentenceCache.readVarInt(binaryIn) << 7);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (csvReader != null) {
+            csvReader.close();
+        }
+        if (binaryIn != null) {
+            binaryIn.close();
+        }
+    }
+
+}
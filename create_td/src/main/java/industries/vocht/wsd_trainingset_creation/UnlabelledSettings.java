@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+/**
+ * the parameters of step 1 (GenerateUnlabelled), read from wsd.properties
+ *
+ */
+public class UnlabelledSettings {
+
+    // surrounding words window size
+    private int windowSize = 25;
+
+    // limit unlabelled files if > 0 to this many bytes
+    private long maxFileSizeInBytes = 0;
+
+    // size in bytes of the chunks .txt files are read and parsed in
+    private int textChunkSize = 1048576;
+
+    // threads inflating the members of a multi-member .gz file in parallel (1: read-ahead thread only)
+    private int gzipThreads = 1;
+
+    // the bytes of inflated members the gzip threads can hold ahead of the reader
+    private long gzipLookAheadInBytes = ParallelGzipInputStream.DEFAULT_LOOK_AHEAD_SIZE;
+
+    // drop text without any focus word before sentence boundary detection
+    private boolean focusPrefilter = true;
+
+    // leave the white-space tokens out of the sentences (the tagger sees only words and punctuation)
+    private boolean compactTokens = false;
+
+    // the format of the unlabelled files: csv (lines of words) or binary (records of word ids)
+    private String unlabelledFormat = UnlabelledWriter.FORMAT_CSV;
+
+    // if > 0, keep a uniform random sample of this many windows of each word, taken from the whole
+    // corpus (uses the segments, see segmentedOutput)
+    private int maxWindowsPerWord = 0;
+
+    // if > 0, a word has enough windows once it has this many (it is no longer looked for), and
+    // the input is no longer read once all words have enough, or all words together have targetWindowsTotal
+    private int targetWindowsPerWord = 0;
+    private long targetWindowsTotal = 0;
+
+    // drop repeated sentences (ignoring white-space and case) and repeated windows of a word, using
+    // a fixed amount of memory (a repeat can be missed once it is full)
+    private boolean deduplicate = false;
+    private long deduplicateMemoryInBytes = 67108864;
+
+    // append the windows of all words to a few large segment files, split into the unlabelled files at the end
+    // (instead of keeping the file of each word open), the size of each segment, and the number of
+    // unlabelled files written at the same time by the split
+    private boolean segmentedOutput = false;
+    private long segmentSizeInBytes = 268435456;
+    private int maxOpenFiles = 512;
+
+    // the bytes of windows buffered for all unlabelled files together before they're all written
+    private long writeBufferSizeInBytes = UnlabelledWriter.WRITE_BUFFER_SIZE;
+
+    // only pos tag the sentences that contain a focus word (the other sentences can't produce a window)
+    private boolean tagFocusSentencesOnly = true;
+
+    // directory of the tagged sentence cache, empty for no cache
+    private String sentenceCacheDirectory = "";
+
+    // seconds between checkpoints of step 1 (for continuing after a crash)
+    private int checkpointIntervalInSeconds = 60;
+
+    // threads for each stage of the pipeline
+    private int readerThreads = 1;
+    private int splitterThreads = 1;
+    private int tokenizerThreads = 1;
+    private int parserThreads = 1;
+    private int windowThreads = 1;
+
+    // number of chunks that can wait between two stages of the pipeline
+    private int queueSize = 16;
+
+    public UnlabelledSettings() {
+    }
+
+    /**
+     * read the settings from wsd.properties (with defaults for missing items) and display them
+     * @param settings the properties
+     */
+    public UnlabelledSettings(Settings settings) {
+
+        windowSize = Integer.parseInt(settings.getValueByKey("windowSize"));
+        System.out.println("windowSize=" + windowSize);
+
+        maxFileSizeInBytes = Long.parseLong(settings.getValueByKey("maxFileSizeInBytes"));
+        System.out.println("maxFileSizeInBytes=" + maxFileSizeInBytes);
+
+        textChunkSize = Integer.parseInt(settings.getValueByKey("textChunkSize", "1048576"));
+        System.out.println("textChunkSize=" + textChunkSize);
+
+        maxWindowsPerWord = Integer.parseInt(settings.getValueByKey("maxWindowsPerWord", "0"));
+        System.out.println("maxWindowsPerWord=" + maxWindowsPerWord);
+
+        targetWindowsPerWord = Integer.parseInt(settings.getValueByKey("targetWindowsPerWord", "0"));
+        System.out.println("targetWindowsPerWord=" + targetWindowsPerWord);
+
+        targetWindowsTotal = Long.parseLong(settings.getValueByKey("targetWindowsTotal", "0"));
+        System.out.println("targetWindowsTotal=" + targetWindowsTotal);
+
+        deduplicate = Boolean.parseBoolean(settings.getValueByKey("deduplicate", "false"));
+        System.out.println("deduplicate=" + deduplicate);
+
+        deduplicateMemoryInBytes = Long.parseLong(settings.getValueByKey("deduplicateMemoryInBytes", "67108864"));
+        System.out.println("deduplicateMemoryInBytes=" + deduplicateMemoryInBytes);
+
+        gzipThreads = Integer.parseInt(settings.getValueByKey("gzipThreads", "1"));
+        System.out.println("gzipThreads=" + gzipThreads);
+
+        gzipLookAheadInBytes = Long.parseLong(settings.getValueByKey("gzipLookAheadInBytes",
+                                              Long.toString(ParallelGzipInputStream.DEFAULT_LOOK_AHEAD_SIZE)));
+        System.out.println("gzipLookAheadInBytes=" + gzipLookAheadInBytes);
+
+        focusPrefilter = Boolean.parseBoolean(settings.getValueByKey("focusPrefilter", "true"));
+        System.out.println("focusPrefilter=" + focusPrefilter);
+
+        compactTokens = Boolean.parseBoolean(settings.getValueByKey("compactTokens", "false"));
+        System.out.println("compactTokens=" + compactTokens);
+
+        unlabelledFormat = settings.getValueByKey("unlabelledFormat", UnlabelledWriter.FORMAT_CSV);
+        System.out.println("unlabelledFormat=" + unlabelledFormat);
+        if (!unlabelledFormat.equals(UnlabelledWriter.FORMAT_CSV) && !unlabelledFormat.equals(UnlabelledWriter.FORMAT_BINARY)) {
+            throw new IllegalArgumentException("unlabelledFormat must be " + UnlabelledWriter.FORMAT_CSV + " or " +
+                                               UnlabelledWriter.FORMAT_BINARY);
+        }
+
+        segmentedOutput = Boolean.parseBoolean(settings.getValueByKey("segmentedOutput", "false"));
+        System.out.println("segmentedOutput=" + segmentedOutput);
+
+        segmentSizeInBytes = Long.parseLong(settings.getValueByKey("segmentSizeInBytes", "268435456"));
+        System.out.println("segmentSizeInBytes=" + segmentSizeInBytes);
+
+        maxOpenFiles = Integer.parseInt(settings.getValueByKey("maxOpenFiles", "512"));
+        System.out.println("maxOpenFiles=" + maxOpenFiles);
+
+        writeBufferSizeInBytes = Long.parseLong(settings.getValueByKey("writeBufferSizeInBytes",
+                                                                       Long.toString(UnlabelledWriter.WRITE_BUFFER_SIZE)));
+        System.out.println("writeBufferSizeInBytes=" + writeBufferSizeInBytes);
+
+        tagFocusSentencesOnly = Boolean.parseBoolean(settings.getValueByKey("tagFocusSentencesOnly", "true"));
+        System.out.println("tagFocusSentencesOnly=" + tagFocusSentencesOnly);
+
+        sentenceCacheDirectory = settings.getValueByKey("sentenceCacheDirectory", "");
+        System.out.println("sentenceCacheDirectory=" + sentenceCacheDirectory);
+
+        checkpointIntervalInSeconds = Integer.parseInt(settings.getValueByKey("checkpointIntervalInSeconds", "60"));
+        System.out.println("checkpointIntervalInSeconds=" + checkpointIntervalInSeconds);
+
+        readerThreads = Integer.parseInt(settings.getValueByKey("readerThreads", "1"));
+        System.out.println("readerThreads=" + readerThreads);
+
+        splitterThreads = Integer.parseInt(settings.getValueByKey("splitterThreads", "1"));
+        System.out.println("splitterThreads=" + splitterThreads);
+
+        tokenizerThreads = Integer.parseInt(settings.getValueByKey("tokenizerThreads", "1"));
+        System.out.println("tokenizerThreads=" + tokenizerThreads);
+
+        parserThreads = Integer.parseInt(settings.getValueByKey("parserThreads", "1"));
+        System.out.println("parserThreads=" + parserThreads);
+
+        windowThreads = Integer.parseInt(settings.getValueByKey("windowThreads", "1"));
+        System.out.println("windowThreads=" + windowThreads);
+
+        queueSize = Integer.parseInt(settings.getValueByKey("queueSize", "16"));
+        System.out.println("queueSize=" + queueSize);
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public long getMaxFileSizeInBytes() {
+        return maxFileSizeInBytes;
+    }
+
+    public void setMaxFileSizeInBytes(long maxFileSizeInBytes) {
+        this.maxFileSizeInBytes = maxFileSizeInBytes;
+    }
+
+    public int getTextChunkSize() {
+        return textChunkSize;
+    }
+
+    public void setTextChunkSize(int textChunkSize) {
+        this.textChunkSize = textChunkSize;
+    }
+
+    public int getGzipThreads() {
+        return gzipThreads;
+    }
+
+    public void setGzipThreads(int gzipThreads) {
+        this.gzipThreads = gzipThreads;
+    }
+
+    public long getGzipLookAheadInBytes() {
+        return gzipLookAheadInBytes;
+    }
+
+    public void setGzipLookAheadInBytes(long gzipLookAheadInBytes) {
+        this.gzipLookAheadInBytes = gzipLookAheadInBytes;
+    }
+
+    public boolean isFocusPrefilter() {
+        return focusPrefilter;
+    }
+
+    public void setFocusPrefilter(boolean focusPrefilter) {
+        this.focusPrefilter = focusPrefilter;
+    }
+
+    public boolean isCompactTokens() {
+        return compactTokens;
+    }
+
+    public void setCompactTokens(boolean compactTokens) {
+        this.compactTokens = compactTokens;
+    }
+
+    public String getUnlabelledFormat() {
+        return unlabelledFormat;
+    }
+
+    public void setUnlabelledFormat(String unlabelledFormat) {
+        this.unlabelledFormat = unlabelledFormat;
+    }
+
+    public int getMaxWindowsPerWord() {
+        return maxWindowsPerWord;
+    }
+
+    public void setMaxWindowsPerWord(int maxWindowsPerWord) {
+        this.maxWindowsPerWord = maxWindowsPerWord;
+    }
+
+    public int getTargetWindowsPerWord() {
+        return targetWindowsPerWord;
+    }
+
+    public void setTargetWindowsPerWord(int targetWindowsPerWord) {
+        this.targetWindowsPerWord = targetWindowsPerWord;
+    }
+
+    public long getTargetWindowsTotal() {
+        return targetWindowsTotal;
+    }
+
+    public void setTargetWindowsTotal(long targetWindowsTotal) {
+        this.targetWindowsTotal = targetWindowsTotal;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    public long getDeduplicateMemoryInBytes() {
+        return deduplicateMemoryInBytes;
+    }
+
+    public void setDeduplicateMemoryInBytes(long deduplicateMemoryInBytes) {
+        this.deduplicateMemoryInBytes = deduplicateMemoryInBytes;
+    }
+
+    public boolean isSegmentedOutput() {
+        return segmentedOutput;
+    }
+
+    public void setSegmentedOutput(boolean segmentedOutput) {
+        this.segmentedOutput = segmentedOutput;
+    }
+
+    public long getSegmentSizeInBytes() {
+        return segmentSizeInBytes;
+    }
+
+    public void setSegmentSizeInBytes(long segmentSizeInBytes) {
+        this.segmentSizeInBytes = segmentSizeInBytes;
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = maxOpenFiles;
+    }
+
+    public long getWriteBufferSizeInBytes() {
+        return writeBufferSizeInBytes;
+    }
+
+    public void setWriteBufferSizeInBytes(long writeBufferSizeInBytes) {
+        this.writeBufferSizeInBytes = writeBufferSizeInBytes;
+    }
+
+    public boolean isTagFocusSentencesOnly() {
+        return tagFocusSentencesOnly;
+    }
+
+    public void setTagFocusSentencesOnly(boolean tagFocusSentencesOnly) {
+        this.tagFocusSentencesOnly = tagFocusSentencesOnly;
+    }
+
+    public String getSentenceCacheDirectory() {
+        return sentenceCacheDirectory;
+    }
+
+    public void setSentenceCacheDirectory(String sentenceCacheDirectory) {
+        this.sentenceCacheDirectory = sentenceCacheDirectory;
+    }
+
+    public int getCheckpointIntervalInSeconds() {
+        return checkpointIntervalInSeconds;
+    }
+
+    public void setCheckpointIntervalInSeconds(int checkpointIntervalInSeconds) {
+        this.checkpointIntervalInSeconds = checkpointIntervalInSeconds;
+    }
+
+    public int getReaderThreads() {
+        return readerThreads;
+    }
+
+    public void setReaderThreads(int readerThreads) {
+        this.readerThreads = readerThreads;
+    }
+
+    public int getSplitterThreads() {
+        return splitterThreads;
+    }
+
+    public void setSplitterThreads(int splitterThreads) {
+        this.splitterThreads = splitterThreads;
+    }
+
+    public int getTokenizerThreads() {
+        return tokenizerThreads;
+    }
+
+    public void setTokenizerThreads(int tokenizerThreads) {
+        this.tokenizerThreads = tokenizerThreads;
+    }
+
+    public int getParserThreads() {
+        return parserThreads;
+    }
+
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    public int getWindowThreads() {
+        return windowThreads;
+    }
+
+    public void setWindowThreads(int windowThreads) {
+        this.windowThreads = windowThreads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+}
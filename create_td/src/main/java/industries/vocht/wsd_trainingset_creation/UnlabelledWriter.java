@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * thread safe writer for the unlabelled training set files, one file per ambiguous word.
+ * several threads can find the same word at the same time, each window (line) is written
+ * as a whole under a lock on the word's file.
+ * Files are appended to, a restarted step 1 continues the files as of its last checkpoint
+ *
+ * a window is written as a csv line of its words, or in the binary format as a record of
+ * word ids (see the vocabulary): magic, version, then for each window a varint word count
+ * followed by the varint id of each word
+ *
+ * the windows are encoded into a byte buffer per word, written to the file (FileChannel) once
+ * the buffer is full, or all together once the buffers of all words reach their limit.
+ * File sizes are counted in bytes (the csv words are encoded once, in the default charset)
+ *
+ */
+public class UnlabelledWriter implements WindowWriter {
+
+    // the formats of the unlabelled files
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_BINARY = "binary";
+
+    // "WSDU" + the version of the binary format
+    public static final int MAGIC = 0x57534455;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+
+    // the buffer of a word starts at this size, and is written to its file once it has FILE_BUFFER_SIZE bytes
+    private static final int INITIAL_BUFFER_SIZE = 256;
+    private static final int FILE_BUFFER_SIZE = 64 * 1024;
+
+    // the default limit for the buffers of all words together
+    public static final long WRITE_BUFFER_SIZE = 64L * 1024 * 1024;
+
+    // the directory to create files in
+    private String nnetUnlabelledDirectory;
+
+    // optional limit (if > 0) for the size of each file
+    private long maxFileSizeInBytes;
+
+    // the words of the windows, and the binary (true) or csv format
+    private Vocabulary vocabulary;
+    private boolean binary;
+
+    // the csv bytes of each word, by id (encoded when first needed)
+    private volatile byte[][] wordBytesArray;
+
+    // the limit of all buffers together, and the number of bytes buffered now
+    private long writeBufferSize;
+    private AtomicLong bufferedSize;
+
+    // the set of files open for writing, by (singular) word
+    private Map<String, WordFile> openFileSet;
+
+    /**
+     * create a new writer
+     * @param nnetUnlabelledDirectory the directory to create files in for training
+     * @param maxFileSizeInBytes max file size for collecting data (ignored if <= 0)
+     * @param vocabulary the words of the window ids
+     * @param binary write the binary format instead of csv
+     */
+    public UnlabelledWriter(String nnetUnlabelledDirectory, long maxFileSizeInBytes, Vocabulary vocabulary, boolean binary) {
+        this(nnetUnlabelledDirectory, maxFileSizeInBytes, vocabulary, binary, WRITE_BUFFER_SIZE);
+    }
+
+    /**
+     * create a new writer
+     * @param nnetUnlabelledDirectory the directory to create files in for training
+     * @param maxFileSizeInBytes max file size for collecting data (ignored if <= 0)
+     * @param vocabulary the words of the window ids
+     * @param binary write the binary format instead of csv
+     * @param writeBufferSize the number of bytes buffered for all files together before they're all written
+     */
+    public UnlabelledWriter(String nnetUnlabelledDirectory, long maxFileSizeInBytes, Vocabulary vocabulary, boolean binary,
+                            long writeBufferSize) {
+        this.nnetUnlabelledDirectory = nnetUnlabelledDirectory;
+        this.maxFileSizeInBytes = maxFileSizeInBytes;
+        this.vocabulary = vocabulary;
+        this.binary = binary;
+        this.wordBytesArray = new byte[0][];
+        this.writeBufferSize = writeBufferSize;
+        this.bufferedSize = new AtomicLong();
+        this.openFileSet = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * write a single window to the file of word
+     * @param word the word whose file to write to
+     * @param window the ids of the words of the window
+     * @return true if the window was written, false if the file has reached its maximum size
+     * @throws IOException file error
+     */
+    @Override
+    public boolean write(String word, int[] window) throws IOException {
+        WordFile file = openFileSet.get(word);
+        if (file == null) {
+            synchronized (this) {
+                file = openFileSet.get(word);
+                if (file == null) {
+                    file = new WordFile(FileChannel.open(Paths.get(outputFilename(nnetUnlabelledDirectory, word, binary)),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), binary);
+                    openFileSet.put(word, file);
+                }
+            }
+        }
+        synchronized (file) {
+            if (maxFileSizeInBytes > 0 && file.size >= maxFileSizeInBytes) {
+                return false;
+            }
+            int length = file.length;
+            if (binary) {
+                file.putVarInt(window.length);
+                for (int id : window) {
+                    file.putVarInt(id);
+                }
+            } else {
+                for (int i = 0; i < window.length; i++) {
+                    if (i > 0) {
+                        file.put((byte)',');
+                    }
+                    file.put(getWordBytes(window[i]));
+                }
+                file.put((byte)'\n');
+            }
+            file.size = file.size + file.length - length;
+            bufferedSize.addAndGet(file.length - length);
+            if (file.length >= FILE_BUFFER_SIZE) {
+                file.flush(bufferedSize);
+            }
+        }
+        if (bufferedSize.get() >= writeBufferSize) {
+            flushAll();
+        }
+        return true;
+    }
+
+    /**
+     * @param id the id of a word
+     * @return the bytes of the word in a csv file
+     */
+    private byte[] getWordBytes(int id) {
+        byte[][] array = wordBytesArray;
+        if (id < array.length && array[id] != null) {
+            return array[id];
+        }
+        synchronized (this) {
+            if (id >= wordBytesArray.length) {
+                wordBytesArray = Arrays.copyOf(wordBytesArray, Math.max(id + 1, wordBytesArray.length * 2));
+            }
+            if (wordBytesArray[id] == null) {
+                wordBytesArray[id] = vocabulary.getWord(id).getBytes();
+            }
+            return wordBytesArray[id];
+        }
+    }
+
+    /**
+     * write the buffers of all files to their files (without forcing them to disk),
+     * the buffers that have grown go back to their initial size
+     * @throws IOException file error
+     */
+    private void flushAll() throws IOException {
+        for (WordFile file : openFileSet.values()) {
+            synchronized (file) {
+                file.flush(bufferedSize);
+                if (file.data.length > INITIAL_BUFFER_SIZE) {
+                    file.data = new byte[INITIAL_BUFFER_SIZE];
+                }
+            }
+        }
+    }
+
+    /**
+     * flush all open files to disk
+     * @return the size in bytes of each open file, by word
+     * @throws IOException file error
+     */
+    @Override
+    public Map<String, Long> sync() throws IOException {
+        Map<String, Long> sizeMap = new HashMap<>();
+        for (Map.Entry<String, WordFile> entry : openFileSet.entrySet()) {
+            WordFile file = entry.getValue();
+            synchronized (file) {
+                file.flush(bufferedSize);
+                file.channel.force(false);
+                sizeMap.put(entry.getKey(), file.channel.size());
+            }
+        }
+        return sizeMap;
+    }
+
+    /**
+     * close all open files
+     * @throws IOException file error
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for ( WordFile file : openFileSet.values() ) {
+            synchronized (file) {
+                try {
+                    file.flush(bufferedSize);
+                } catch (IOException ex) {
+                    error = ex;
+                }
+                file.channel.close();
+            }
+        }
+        openFileSet.clear();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * create an unlabelled (csv) filename for the given word
+     *
+     * @param nnetUnlabelledDirectory the directory we start with
+     * @param word the word we're using
+     * @return the combined name for writing to
+     */
+    public static String outputFilename( String nnetUnlabelledDirectory, String word ) {
+        return outputFilename(nnetUnlabelledDirectory, word, false);
+    }
+
+    /**
+     * create an unlabelled filename for the given word
+     *
+     * @param nnetUnlabelledDirectory the directory we start with
+     * @param word the word we're using
+     * @param binary the name of the binary file instead of the csv file
+     * @return the combined name for writing to
+     */
+    public static String outputFilename( String nnetUnlabelledDirectory, String word, boolean binary ) {
+        return nnetUnlabelledDirectory + word + (binary ? "-trainingset.bin" : "-trainingset.csv");
+    }
+
+    // an open file, the bytes not written to it yet, and its size in bytes (written + buffered)
+    private static class WordFile {
+        private FileChannel channel;
+        private byte[] data;
+        private int length;
+        private long size;
+
+        private WordFile(FileChannel channel, boolean binary) throws IOException {
+            this.channel = channel;
+            this.data = new byte[INITIAL_BUFFER_SIZE];
+            this.size = channel.size();
+            if (binary && size == 0) {
+                put((byte)(MAGIC >>> 24));
+                put((byte)(MAGIC >>> 16));
+                put((byte)(MAGIC >>> 8));
+                put((byte)MAGIC);
+                put((byte)(VERSION >>> 24));
+                put((byte)(VERSION >>> 16));
+                put((byte)(VERSION >>> 8));
+                put((byte)VERSION);
+                size = HEADER_SIZE;
+            }
+        }
+
+        private void put(byte b) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, length * 2);
+            }
+            data[length] = b;
+            length = length + 1;
+        }
+
+        private void put(byte[] bytes) {
+            if (length + bytes.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + bytes.length, data.length * 2));
+            }
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length = length + bytes.length;
+        }
+
+        // the same encoding as SentenceCache.writeVarInt()
+        private void putVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                put((byte)((value & 0x7f) | 0x80));
+                value = value >>> 7;
+            }
+            put((byte)value);
+        }
+
+        // write the buffer to the file
+        private void flush(AtomicLong bufferedSize) throws IOException {
+            if (length > 0) {
+                ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                bufferedSize.addAndGet(-length);
+                length = 0;
+            }
+        }
+    }
+
+}
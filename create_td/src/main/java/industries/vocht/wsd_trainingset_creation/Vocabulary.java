@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the words of the unlabelled files as dense int ids (0, 1, 2, ...) shared by both steps.
+ * Each word keeps its flags (undesirable, lexicon noun) and the lexicon senses it is part of,
+ * so these are worked out once per word instead of once per token.  Ids never change once
+ * given out: the vocabulary lives next to the unlabelled files and new words are appended to it.
+ * Adding words is thread safe, the flags and senses are set up before the words are looked up
+ *
+ * a sense of a word is a pair (id of the lexicon noun, index of the set of the noun), the senses of
+ * all words are pairs in a single int array and each word has the offset and the number of its pairs
+ *
+ * the file has a line for each id (in order), tab separated:
+ *     word  flags  senses (noun id:set index, comma separated)
+ * (a file without the senses column, from before they were kept, is read as words without senses)
+ * a tab, new-line, carriage return or back-slash in a word is escaped with a back-slash (\t \n \r \\)
+ *
+ */
+public class Vocabulary {
+
+    public static final String FILENAME = "vocabulary.txt";
+
+    // the flags of a word
+    public static final int UNDESIRABLE = 0x01;    // Undesirables.isUndesirable()
+    public static final int LEXICON_NOUN = 0x02;   // one of the nouns (or plurals) of the lexicon
+
+    // the file (null: not saved)
+    private String filename;
+
+    // id of each word
+    private final ConcurrentHashMap<String, Integer> idMap;
+
+    // by id: the word and its flags (replaced when they grow, under the lock)
+    private volatile String[] wordArray;
+    private volatile byte[] flagArray;
+    private int size;
+
+    // by id: the offset of the senses of the word in senseArray, and the number of its senses
+    // (sense i is senseArray[offset + i * 2] (noun id), senseArray[offset + i * 2 + 1] (set index))
+    private volatile int[] senseOffsetArray;
+    private volatile int[] senseCountArray;
+    private int[] senseArray;
+    private int senseLength;
+
+    // the number of words in the file, and true if an earlier word changed (the file is rewritten)
+    private int savedSize;
+    private boolean changed;
+
+    /**
+     * an empty vocabulary in memory only
+     */
+    public Vocabulary() {
+        this.idMap = new ConcurrentHashMap<>();
+        this.wordArray = new String[1024];
+        this.flagArray = new byte[1024];
+        this.senseOffsetArray = new int[1024];
+        this.senseCountArray = new int[1024];
+        this.senseArray = new int[1024];
+    }
+
+    /**
+     * open the vocabulary of a directory, new words are appended to it by save()
+     * @param directory the unlabelled directory
+     * @return the vocabulary (empty if there is no file yet)
+     * @throws IOException file error
+     */
+    public static Vocabulary open(String directory) throws IOException {
+        Vocabulary vocabulary = new Vocabulary();
+        vocabulary.filename = directory + FILENAME;
+        File file = new File(vocabulary.filename);
+        if (file.exists()) {
+            vocabulary.load(file);
+        }
+        return vocabulary;
+    }
+
+    // read the words of the file, an incomplete last line (stopped during a save) is removed
+    private void load(File file) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        int complete = data.length;
+        while (complete > 0 && data[complete - 1] != '\n') {
+            complete--;
+        }
+        if (complete < data.length) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(complete);
+            }
+        }
+        String text = new String(data, 0, complete, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            String[] parts = text.substring(start, end).split("\t", -1);
+            if (parts.length != 2 && parts.length != 3) {
+                throw new IOException("invalid vocabulary line " + size + " in " + filename);
+            }
+            int id = getId(unescape(parts[0]));
+            if (id != size - 1) {
+                throw new IOException("duplicate word \"" + parts[0] + "\" in " + filename);
+            }
+            flagArray[id] = Byte.parseByte(parts[1]);
+            if (parts.length == 3 && parts[2].length() > 0) {
+                String[] senses = parts[2].split(",");
+                int[] pairs = new int[senses.length * 2];
+                for (int i = 0; i < senses.length; i++) {
+                    int colon = senses[i].indexOf(':');
+                    if (colon < 0) {
+                        throw new IOException("invalid senses on vocabulary line " + id + " in " + filename);
+                    }
+                    pairs[i * 2] = Integer.parseInt(senses[i].substring(0, colon));
+                    pairs[i * 2 + 1] = Integer.parseInt(senses[i].substring(colon + 1));
+                }
+                setSenses(id, pairs, pairs.length);
+            }
+            start = end + 1;
+        }
+        savedSize = size;
+    }
+
+    /**
+     * @param word a word
+     * @return the id of the word, a new id if it isn't known yet
+     */
+    public int getId(String word) {
+        Integer id = idMap.get(word);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = idMap.get(word);
+            if (id == null) {
+                id = size;
+                if (id == wordArray.length) {
+                    flagArray = Arrays.copyOf(flagArray, id * 2);
+                    senseOffsetArray = Arrays.copyOf(senseOffsetArray, id * 2);
+                    senseCountArray = Arrays.copyOf(senseCountArray, id * 2);
+                    wordArray = Arrays.copyOf(wordArray, id * 2);
+                }
+                wordArray[id] = word;
+                size = size + 1;
+                idMap.put(word, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param word a word
+     * @return the id of the word, -1 if it isn't known
+     */
+    public int findId(String word) {
+        Integer id = idMap.get(word);
+        return id != null ? id : -1;
+    }
+
+    public String getWord(int id) {
+        return wordArray[id];
+    }
+
+    public int getFlags(int id) {
+        return flagArray[id];
+    }
+
+    public boolean isUndesirable(int id) {
+        return (flagArray[id] & UNDESIRABLE) != 0;
+    }
+
+    /**
+     * @param id the id of a word
+     * @return the number of lexicon senses the word is part of
+     */
+    public int getSenseCount(int id) {
+        return senseCountArray[id];
+    }
+
+    /**
+     * @param id the id of a word
+     * @param i the index of one of its senses (0 .. getSenseCount() - 1)
+     * @return the id of the lexicon noun of the sense
+     */
+    public int getSenseNoun(int id, int i) {
+        return senseArray[senseOffsetArray[id] + i * 2];
+    }
+
+    /**
+     * @param id the id of a word
+     * @param i the index of one of its senses (0 .. getSenseCount() - 1)
+     * @return the index of the set of the noun (WordnetAmbiguousSet.getSetList()) of the sense
+     */
+    public int getSenseIndex(int id, int i) {
+        return senseArray[senseOffsetArray[id] + i * 2 + 1];
+    }
+
+    /**
+     * @return the number of words
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * mark the undesirable words
+     * @param undesirables the undesirable words
+     */
+    public void addUndesirables(Undesirables undesirables) {
+        for (String word : undesirables.getAsList()) {
+            addFlags(getId(word), UNDESIRABLE);
+        }
+    }
+
+    /**
+     * mark the nouns of the lexicon and add the words of their senses, each word gets the senses of
+     * this lexicon (the senses of an earlier lexicon are replaced)
+     * @param map the lexicon (by noun and plural)
+     */
+    public void addLexicon(Map<String, WordnetAmbiguousSet> map) {
+        for (String noun : new TreeSet<>(map.keySet())) {
+            addFlags(getId(noun), LEXICON_NOUN);
+        }
+        // the senses of each word, in noun order
+        Map<Integer, int[]> senseMap = new HashMap<>();
+        Map<Integer, Integer> lengthMap = new HashMap<>();
+        for (String noun : new TreeSet<>(map.keySet())) {
+            WordnetAmbiguousSet set = map.get(noun);
+            if (!noun.equals(set.getWord())) {
+                continue; // the plural, same senses
+            }
+            int nounId = getId(noun);
+            List<HashSet<String>> setList = set.getSetList();
+            for (int i = 0; i < setList.size(); i++) {
+                for (String word : new TreeSet<>(setList.get(i))) {
+                    int id = getId(word);
+                    int length = lengthMap.getOrDefault(id, 0);
+                    int[] pairs = senseMap.get(id);
+                    if (pairs == null || pairs.length == length) {
+                        pairs = Arrays.copyOf(pairs != null ? pairs : new int[0], Math.max(4, length * 2));
+                        senseMap.put(id, pairs);
+                    }
+                    pairs[length] = nounId;
+                    pairs[length + 1] = i;
+                    lengthMap.put(id, length + 2);
+                }
+            }
+        }
+        synchronized (this) {
+            for (int id = 0; id < size; id++) {
+                int[] pairs = senseMap.get(id);
+                int length = pairs != null ? lengthMap.get(id) : 0;
+                if (!hasSenses(id, pairs, length)) {
+                    setSenses(id, pairs, length);
+                    changed = changed || id < savedSize;
+                }
+            }
+        }
+    }
+
+    // true if a word has exactly these senses (pairs of noun id and set index)
+    private boolean hasSenses(int id, int[] pairs, int length) {
+        if (senseCountArray[id] * 2 != length) {
+            return false;
+        }
+        int offset = senseOffsetArray[id];
+        for (int i = 0; i < length; i++) {
+            if (senseArray[offset + i] != pairs[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // set the senses of a word (pairs of noun id and set index), they're added to the end of senseArray
+    // (the pairs a word had before are left unused)
+    private synchronized void setSenses(int id, int[] pairs, int length) {
+        if (length == 0) {
+            senseCountArray[id] = 0;
+            return;
+        }
+        if (senseLength + length > senseArray.length) {
+            if (senseLength + length > Integer.MAX_VALUE - 8) {
+                throw new IllegalStateException("too many lexicon senses for the vocabulary");
+            }
+            long grown = Math.max((long)senseLength + length, senseArray.length * 2L);
+            senseArray = Arrays.copyOf(senseArray, (int)Math.min(grown, Integer.MAX_VALUE - 8));
+        }
+        System.arraycopy(pairs, 0, senseArray, senseLength, length);
+        senseOffsetArray[id] = senseLength;
+        senseCountArray[id] = length / 2;
+        senseLength = senseLength + length;
+    }
+
+    // set flags of a word
+    private synchronized void addFlags(int id, int flags) {
+        if ((flagArray[id] & flags) != flags) {
+            flagArray[id] = (byte)(flagArray[id] | flags);
+            changed = changed || id < savedSize;
+        }
+    }
+
+    /**
+     * append the new words to the file (all words if an earlier one changed) and force it to disk
+     * @throws IOException file error
+     */
+    public synchronized void save() throws IOException {
+        if (filename == null || (savedSize == size && !changed)) {
+            return;
+        }
+        if (changed) {
+            String tempFilename = filename + ".tmp";
+            write(tempFilename, 0, false);
+            Files.move(Paths.get(tempFilename), Paths.get(filename),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } else {
+            write(filename, savedSize, true);
+        }
+        savedSize = size;
+    }
+
+    // write the words from an id on
+    private void write(String filename, int from, boolean append) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(filename, append)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int id = from; id < size; id++) {
+                sb.setLength(0);
+                escape(wordArray[id], sb).append('\t').append(flagArray[id]).append('\t');
+                for (int i = 0; i < senseCountArray[id]; i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(getSenseNoun(id, i)).append(':').append(getSenseIndex(id, i));
+                }
+                writer.write(sb.append('\n').toString());
+            }
+            writer.flush();
+            out.getChannel().force(true);
+        }
+    }
+
+    // add a word to a line of the file
+    private static StringBuilder escape(String word, StringBuilder sb) {
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            switch (ch) {
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\\': sb.append("\\\\"); break;
+                default: sb.append(ch);
+            }
+        }
+        return sb;
+    }
+
+    // a word from a line of the file
+    private static String unescape(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\\' && i + 1 < text.length()) {
+                i = i + 1;
+                switch (text.charAt(i)) {
+                    case 't': ch = '\t'; break;
+                    case 'n': ch = '\n'; break;
+                    case 'r': ch = '\r'; break;
+                    default: ch = text.charAt(i);
+                }
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * all the windows of a word read once into memory for step 2 (GenerateLabelled), which
+ * goes over them many times.  Each distinct part (word) of the windows gets a local id,
+ * a window is a range of ids in a single int array.  Everything step 2 needs of a part
+ * (its lower case trimmed key, whether it is the focus word itself) is worked out once per id
+ * instead of once per occurrence.
+ * The keys are words of the vocabulary (parts that differ only in case share a key), numbered in
+ * the order of their vocabulary ids (key ids, 0 .. getNumKeys() - 1), and an inverted index
+ * (see buildIndex()) lists the windows each key is a context part of
+ *
+ */
+public class WindowCorpus {
+
+    // the local ids of the parts of window i are idArray[windowStart[i]] .. idArray[windowStart[i + 1] - 1]
+    private int[] idArray;
+    private int[] windowStart;
+    private int size;
+
+    // by local id: the part as read, and its key (lower case, trimmed)
+    private String[] partArray;
+    private String[] keyArray;
+
+    // by local id: the id of its key, and by key id: the vocabulary id of the key (ascending)
+    // and the first local id with the key
+    private int[] keyIdArray;
+    private int[] keyWordIdArray;
+    private int[] keyFirstIdArray;
+
+    // the words of the parts and keys
+    private Vocabulary vocabulary;
+
+    // the inverted index: the windows with a context part of key k are
+    // indexArray[indexStart[k]] .. indexArray[indexStart[k + 1] - 1], in order (null until built)
+    private int[] indexStart;
+    private int[] indexArray;
+
+    // by local id: a context part (not the focus word) that is counted for the senses,
+    // and a context key that can be added to a sense
+    private boolean[] contextArray;
+    private boolean[] candidateArray;
+
+    /**
+     * read all the windows of a reader
+     * @param reader the windows (closed when done)
+     * @param word the focus word of the windows
+     * @param wordPlural the plural of word (can be null)
+     * @param vocabulary the ids of the words (of the reader if it is a binary file), the words of a csv file
+     *                   and keys that aren't in it yet are added to it
+     * @return the windows
+     * @throws IOException file error
+     */
+    public static WindowCorpus load(UnlabelledReader reader, String word, String wordPlural,
+                                    Vocabulary vocabulary) throws IOException {
+        WindowCorpus corpus = new WindowCorpus();
+        corpus.vocabulary = vocabulary;
+
+        // the local id of each vocabulary id (+ 1, 0: none yet), and the vocabulary id of each local id
+        int[] localIdArray = new int[1024];
+        int[] wordIdArray = new int[1024];
+        int numIds = 0;
+        int[] idArray = new int[1024];
+        int[] windowStart = new int[64];
+        int length = 0;
+        int size = 0;
+        try (UnlabelledReader in = reader) {
+            for (int[] wordIds; (wordIds = in.nextIds(vocabulary)) != null; ) {
+                if (length + wordIds.length > idArray.length) {
+                    idArray = Arrays.copyOf(idArray, Math.max(length + wordIds.length, idArray.length * 2));
+                }
+                for (int wordId : wordIds) {
+                    if (wordId >= localIdArray.length) {
+                        localIdArray = Arrays.copyOf(localIdArray, Math.max(wordId + 1, localIdArray.length * 2));
+                    }
+                    int id = localIdArray[wordId] - 1;
+                    if (id < 0) {
+                        id = numIds;
+                        if (id == wordIdArray.length) {
+                            wordIdArray = Arrays.copyOf(wordIdArray, id * 2);
+                        }
+                        wordIdArray[id] = wordId;
+                        localIdArray[wordId] = id + 1;
+                        numIds = numIds + 1;
+                    }
+                    idArray[length] = id;
+                    length = length + 1;
+                }
+                size = size + 1;
+                if (size + 1 > windowStart.length) {
+                    windowStart = Arrays.copyOf(windowStart, windowStart.length * 2);
+                }
+                windowStart[size] = length;
+            }
+        }
+        corpus.idArray = idArray;
+        corpus.windowStart = windowStart;
+        corpus.size = size;
+
+        // the same checks as step 2 did on each part of each line, the key of a part already in lower
+        // case (all parts written by step 1) is the part itself
+        corpus.partArray = new String[numIds];
+        corpus.keyArray = new String[numIds];
+        corpus.contextArray = new boolean[numIds];
+        corpus.candidateArray = new boolean[numIds];
+        int[] keyWordIds = new int[numIds];
+        for (int id = 0; id < numIds; id++) {
+            String part = vocabulary.getWord(wordIdArray[id]);
+            String key = part.toLowerCase().trim();
+            keyWordIds[id] = key.equals(part) ? wordIdArray[id] : vocabulary.getId(key);
+            corpus.partArray[id] = part;
+            corpus.keyArray[id] = vocabulary.getWord(keyWordIds[id]); // share the String
+            corpus.contextArray[id] = part.compareToIgnoreCase(word) != 0 &&
+                                      (wordPlural == null || wordPlural.compareToIgnoreCase(word) != 0);
+            corpus.candidateArray[id] = key.compareToIgnoreCase(word) != 0 &&
+                                        (wordPlural == null || wordPlural.compareToIgnoreCase(key) != 0);
+        }
+
+        // number the keys in vocabulary id order
+        int[] sorted = Arrays.copyOf(keyWordIds, numIds);
+        Arrays.sort(sorted);
+        int numKeys = 0;
+        for (int i = 0; i < numIds; i++) {
+            if (numKeys == 0 || sorted[numKeys - 1] != sorted[i]) {
+                sorted[numKeys] = sorted[i];
+                numKeys = numKeys + 1;
+            }
+        }
+        corpus.keyWordIdArray = Arrays.copyOf(sorted, numKeys);
+        corpus.keyIdArray = new int[numIds];
+        corpus.keyFirstIdArray = new int[numKeys];
+        Arrays.fill(corpus.keyFirstIdArray, -1);
+        for (int id = 0; id < numIds; id++) {
+            int keyId = Arrays.binarySearch(corpus.keyWordIdArray, keyWordIds[id]);
+            corpus.keyIdArray[id] = keyId;
+            if (corpus.keyFirstIdArray[keyId] < 0) {
+                corpus.keyFirstIdArray[keyId] = id;
+            }
+        }
+        return corpus;
+    }
+
+    /**
+     * build the inverted index from the keys of the context parts to the windows they are in
+     */
+    public void buildIndex() {
+        if (indexArray != null) {
+            return;
+        }
+        int numKeys = keyWordIdArray.length;
+        int[] lastWindow = new int[numKeys];
+        Arrays.fill(lastWindow, -1);
+
+        // count the windows of each key, then fill in the windows
+        indexStart = new int[numKeys + 1];
+        for (int window = 0; window < size; window++) {
+            for (int p = windowStart[window]; p < windowStart[window + 1]; p++) {
+                int id = idArray[p];
+                int keyId = keyIdArray[id];
+                if (contextArray[id] && lastWindow[keyId] != window) {
+                    lastWindow[keyId] = window;
+                    indexStart[keyId + 1]++;
+                }
+            }
+        }
+        for (int k = 0; k < numKeys; k++) {
+            indexStart[k + 1] = indexStart[k + 1] + indexStart[k];
+        }
+        int[] position = Arrays.copyOf(indexStart, numKeys);
+        int[] index = new int[indexStart[numKeys]];
+        Arrays.fill(lastWindow, -1);
+        for (int window = 0; window < size; window++) {
+            for (int p = windowStart[window]; p < windowStart[window + 1]; p++) {
+                int id = idArray[p];
+                int keyId = keyIdArray[id];
+                if (contextArray[id] && lastWindow[keyId] != window) {
+                    lastWindow[keyId] = window;
+                    index[position[keyId]] = window;
+                    position[keyId]++;
+                }
+            }
+        }
+        indexArray = index;
+    }
+
+    /**
+     * @return the number of windows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of distinct parts (local ids)
+     */
+    public int getNumIds() {
+        return partArray.length;
+    }
+
+    /**
+     * @param window the index of a window
+     * @return the offset of its first id in getIds()
+     */
+    public int getStart(int window) {
+        return windowStart[window];
+    }
+
+    /**
+     * @param window the index of a window
+     * @return the offset after its last id in getIds()
+     */
+    public int getEnd(int window) {
+        return windowStart[window + 1];
+    }
+
+    /**
+     * @return the local ids of the parts of all windows (see getStart() and getEnd())
+     */
+    public int[] getIds() {
+        return idArray;
+    }
+
+    /**
+     * @param id a local id
+     * @return the part as it was read
+     */
+    public String getPart(int id) {
+        return partArray[id];
+    }
+
+    /**
+     * @param id a local id
+     * @return the part in lower case, trimmed
+     */
+    public String getKey(int id) {
+        return keyArray[id];
+    }
+
+    /**
+     * @param id a local id
+     * @return the id of its key
+     */
+    public int getKeyId(int id) {
+        return keyIdArray[id];
+    }
+
+    /**
+     * @return the number of distinct keys (key ids)
+     */
+    public int getNumKeys() {
+        return keyWordIdArray.length;
+    }
+
+    /**
+     * @param keyId the id of a key
+     * @return the key
+     */
+    public String getKeyText(int keyId) {
+        return vocabulary.getWord(keyWordIdArray[keyId]);
+    }
+
+    /**
+     * @param keyId the id of a key
+     * @return the vocabulary id of the key
+     */
+    public int getKeyWordId(int keyId) {
+        return keyWordIdArray[keyId];
+    }
+
+    /**
+     * @param keyId the id of a key
+     * @return the first local id with the key (local ids are in the order the parts first appear in the windows)
+     */
+    public int getKeyFirstId(int keyId) {
+        return keyFirstIdArray[keyId];
+    }
+
+    /**
+     * @param wordId the vocabulary id of a key (lower case, trimmed)
+     * @return its key id, -1 if no part of the windows has this key
+     */
+    public int findKeyId(int wordId) {
+        int keyId = Arrays.binarySearch(keyWordIdArray, wordId);
+        return keyId >= 0 ? keyId : -1;
+    }
+
+    /**
+     * @param keyId the id of a key
+     * @return the offset of the first window of the key in getIndex() (see buildIndex())
+     */
+    public int getIndexStart(int keyId) {
+        return indexStart[keyId];
+    }
+
+    /**
+     * @param keyId the id of a key
+     * @return the offset after the last window of the key in getIndex()
+     */
+    public int getIndexEnd(int keyId) {
+        return indexStart[keyId + 1];
+    }
+
+    /**
+     * @return the windows of all keys (see getIndexStart() and getIndexEnd())
+     */
+    public int[] getIndex() {
+        return indexArray;
+    }
+
+    /**
+     * @param id a local id
+     * @return true if the part isn't the focus word (it counts for the senses of the window)
+     */
+    public boolean isContext(int id) {
+        return contextArray[id];
+    }
+
+    /**
+     * @param id a local id
+     * @return true if the key is neither the focus word nor its plural (it can be added to a sense)
+     */
+    public boolean isCandidate(int id) {
+        return candidateArray[id];
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * where step 1 writes its windows: straight to the unlabelled file of each word (UnlabelledWriter),
+ * or to a few large segment files that are split into the unlabelled files at the end (SegmentLog)
+ *
+ */
+public interface WindowWriter extends Closeable {
+
+    /**
+     * write a single window of a word
+     * @param word the (singular) word the window belongs to
+     * @param window the ids of the words of the window
+     * @return true if the window was written, false if it was dropped (the file of the word is full)
+     * @throws IOException file error
+     */
+    boolean write(String word, int[] window) throws IOException;
+
+    /**
+     * flush everything written so far to disk
+     * @return the size in bytes of each file written to, by name (the checkpoint sizes)
+     * @throws IOException file error
+     */
+    Map<String, Long> sync() throws IOException;
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2017 by Peter de Vocht
+ *
+ * All rights reserved. No part of this publication may be reproduced, distributed, or
+ * transmitted in any form or by any means, including photocopying, recording, or other
+ * electronic or mechanical methods, without the prior written permission of the publisher,
+ * except in the case of brief quotations embodied in critical reviews and certain other
+ * noncommercial uses permitted by copyright law.
+ *
+ */
+
+package industries.vocht.wsd_trainingset_creation;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * compactTokens leaves the white-space tokens out of a sentence, the windows are still measured
+ * in positions of the full token stream.  With the same tags both a compact and a full (dense) sentence
+ * have the windows step 1 collected before the compact tokens (compact-windows.txt); the windows can only
+ * differ where the tagger tags a focus word differently (see compactTokens in wsd.properties)
+ *
+ */
+public class CompactTokensTest {
+
+    // the data directory, relative to create_td (the pos-tagger model isn't part of the repository)
+    private static final String DATA_PATH = "../data";
+    private static final String MODEL_FILENAME = DATA_PATH + "/opennlp/models-1.5/en-pos-maxent.bin";
+
+    // the windows collected before the compact tokens
+    private static final String EXPECTED_WINDOWS = "/compact-windows.txt";
+
+    private static final int[] WINDOW_SIZES = new int[] {3, 6, 25};
+
+    private static final String[] TEXT = new String[] {
+            "The bank approved the loan on Monday, after 3 weeks of waiting for the money.",
+            "  She sat on the bank of the river  and watched the banks flood in the rain.  ",
+            "Dr. Jones asked the Bank for 1,000 dollars, then walked along the river to the old mill.",
+            "The bank.",
+            "Banks, rivers and loans: all of them in one sentence about the bank of a river.",
+            "Merchants traded grain, timber, wool, cattle, silver coins and fine cloth beside the old stone bank " +
+                    "building near the wide river where farmers brought their harvest every single market morning."
+    };
+
+    private Map<String, WordnetAmbiguousSet> map;
+    private FocusMatcher focus;
+    private Vocabulary vocabulary;
+
+    @Before
+    public void setup() {
+        map = new HashMap<>();
+        WordnetAmbiguousSet bank = new WordnetAmbiguousSet("bank", "banks");
+        bank.addSetLine("bank,money,loan,account");
+        bank.addSetLine("bank,river,shore,water");
+        map.put("bank", bank);
+        map.put("banks", bank);
+        WordnetAmbiguousSet river = new WordnetAmbiguousSet("river", "rivers");
+        river.addSetLine("river,water,stream,flood");
+        map.put("river", river);
+        map.put("rivers", river);
+        focus = new FocusMatcher(map.keySet());
+        // as step 1: the white-space tokens are undesirable, they are never part of a window
+        vocabulary = new Vocabulary();
+        vocabulary.addUndesirables(new Undesirables());
+    }
+
+    /**
+     * a compact sentence is the dense sentence without its white-space tokens,
+     * each token keeps its position in the dense sentence
+     */
+    @Test
+    public void testPositions() {
+        for (String text : TEXT) {
+            Sentence dense = tokenize(text, false);
+            Sentence compact = tokenize(text, true);
+            assertFalse(dense.isCompact());
+            assertTrue(compact.isCompact());
+            assertEquals(dense.size(), compact.getFullSize());
+            assertTrue(compact.size() < dense.size());
+
+            int index = 0;
+            for (int i = 0; i < dense.size(); i++) {
+                if (dense.getText(i).equals(" ")) {
+                    continue; // white-space, left out
+                }
+                assertEquals(i, compact.getPosition(index));
+                assertEquals(dense.getText(i), compact.getText(index));
+                index = index + 1;
+            }
+            assertEquals(compact.size(), index);
+        }
+    }
+
+    /**
+     * with the same tags, the dense and the compact sentences have the windows step 1 collected
+     * before the compact tokens
+     */
+    @Test
+    public void testExpectedWindows() throws Exception {
+        List<String> expectedList = readExpectedWindows();
+        for (String tags : new String[] {"nouns", "mixed"}) {
+            for (int windowSize : WINDOW_SIZES) {
+                for (int s = 0; s < TEXT.length; s++) {
+                    Sentence dense = tokenize(TEXT[s], false);
+                    Sentence compact = tokenize(TEXT[s], true);
+                    for (int i = 0; i < dense.size(); i++) {
+                        dense.setTag(i, tags.equals("nouns") || i % 3 != 0 ? PennTag.NN : PennTag.VB);
+                    }
+                    copyTags(dense, compact);
+
+                    String prefix = tags + "\t" + windowSize + "\t" + s + "\t";
+                    List<String> expected = new ArrayList<>();
+                    for (String line : expectedList) {
+                        if (line.startsWith(prefix)) {
+                            expected.add(line.substring(prefix.length()));
+                        }
+                    }
+                    assertEquals(prefix, expected, getWindows(single(dense), windowSize));
+                    assertEquals(prefix, expected, getWindows(single(compact), windowSize));
+                }
+            }
+        }
+    }
+
+    /**
+     * the tags of the words around a focus word don't change its window
+     */
+    @Test
+    public void testOtherTagsDiffer() {
+        for (String text : TEXT) {
+            Sentence dense = tokenize(text, false);
+            Sentence compact = tokenize(text, true);
+            tagAll(dense, PennTag.NN);
+            tagAll(compact, PennTag.JJ);
+            for (int i = 0; i < compact.size(); i++) {
+                if (isFocusWord(compact, i)) {
+                    compact.setTag(i, PennTag.NN);
+                }
+            }
+            for (int windowSize : WINDOW_SIZES) {
+                assertEquals(text, getWindows(single(dense), windowSize), getWindows(single(compact), windowSize));
+            }
+        }
+    }
+
+    /**
+     * a focus word that is a noun in one sentence and not in the other only has a window in the first,
+     * all other windows are the same
+     */
+    @Test
+    public void testFocusTagDiffers() {
+        for (String text : TEXT) {
+            Sentence dense = tokenize(text, false);
+            Sentence compact = tokenize(text, true);
+            tagAll(dense, PennTag.NN);
+            copyTags(dense, compact);
+            for (int i = 0; i < compact.size(); i++) {
+                if (!isFocusWord(compact, i)) {
+                    continue;
+                }
+                // the compact tagger says verb, the dense one noun
+                compact.setTag(i, PennTag.VB);
+                for (int windowSize : WINDOW_SIZES) {
+                    List<String> denseWindows = getWindows(single(dense), windowSize);
+                    List<String> compactWindows = getWindows(single(compact), windowSize);
+                    int lost = denseWindows.size() - compactWindows.size();
+                    assertTrue(lost == 0 || lost == 1);
+                    dense.setTag(compact.getPosition(i), PennTag.VB);
+                    assertEquals(text, getWindows(single(dense), windowSize), compactWindows);
+                    dense.setTag(compact.getPosition(i), PennTag.NN);
+                }
+                compact.setTag(i, PennTag.NN);
+            }
+        }
+    }
+
+    /**
+     * tag both forms with the open-nlp tagger, any window difference is a tag difference:
+     * the dense sentence with the tags of the compact one has the windows of the compact one
+     */
+    @Test
+    public void testTagger() throws Exception {
+        Assume.assumeTrue("needs the open-nlp pos model " + MODEL_FILENAME + ", it isn't part of the repository",
+                          new File(MODEL_FILENAME).exists());
+        NLPParser parser = new NLPParser(DATA_PATH);
+        for (String text : TEXT) {
+            Sentence dense = tokenize(text, false);
+            Sentence compact = tokenize(text, true);
+            parser.setupTags(dense);
+            parser.setupTags(compact);
+            for (int i = 0; i < compact.size(); i++) {
+                dense.setTag(compact.getPosition(i), compact.getTag(i));
+            }
+            for (int windowSize : WINDOW_SIZES) {
+                assertEquals(text, getWindows(single(dense), windowSize), getWindows(single(compact), windowSize));
+            }
+        }
+    }
+
+    // the tokens of a sentence, as step 1 makes them
+    private static Sentence tokenize(String text, boolean compact) {
+        TokenOffsets tokenOffsets = new TokenOffsets();
+        new Tokenizer().tokenize(text, tokenOffsets);
+        return tokenOffsets.toSentence(compact);
+    }
+
+    private static void tagAll(Sentence sentence, PennTag tag) {
+        for (int i = 0; i < sentence.size(); i++) {
+            sentence.setTag(i, tag);
+        }
+    }
+
+    // the tags of a dense sentence for the tokens of its compact form
+    private static void copyTags(Sentence dense, Sentence compact) {
+        for (int i = 0; i < compact.size(); i++) {
+            compact.setTag(i, dense.getTag(compact.getPosition(i)));
+        }
+    }
+
+    private boolean isFocusWord(Sentence sentence, int index) {
+        return focus.contains(sentence.getChars(), sentence.getStart(index), sentence.getEnd(index));
+    }
+
+    private static List<Sentence> single(Sentence sentence) {
+        List<Sentence> sentenceList = new ArrayList<>();
+        sentenceList.add(sentence);
+        return sentenceList;
+    }
+
+    // the windows step 1 collects from the sentences, as "word<tab>window words" (a csv line)
+    private List<String> getWindows(List<Sentence> sentenceList, int windowSize) {
+        DocumentChunk chunk = new DocumentChunk("test");
+        chunk.getSentenceList().addAll(sentenceList);
+        new GenerateUnlabelled().parseSingle(chunk, windowSize, vocabulary, new AtomicInteger(), map, focus);
+
+        List<String> windowList = new ArrayList<>();
+        for (int i = 0; i < chunk.getWindowList().size(); i++) {
+            StringBuilder sb = new StringBuilder(chunk.getWindowWordList().get(i)).append("\t");
+            int[] window = chunk.getWindowList().get(i);
+            for (int j = 0; j < window.length; j++) {
+                if (j > 0) {
+                    sb.append(",");
+                }
+                sb.append(vocabulary.getWord(window[j]));
+            }
+            windowList.add(sb.toString());
+        }
+        return windowList;
+    }
+
+    // the lines of the expected windows, without the comments
+    private List<String> readExpectedWindows() throws Exception {
+        List<String> lineList = new ArrayList<>();
+        try (InputStream in = getClass().getResourceAsStream(EXPECTED_WINDOWS)) {
+            assertNotNull(EXPECTED_WINDOWS, in);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    lineList.add(line);
+                }
+            }
+        }
+        return lineList;
+    }
+
+}